@@ -0,0 +1,89 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The synthetic input of a benchmark and the settings to process it, shared by all threads of a trial.
+ */
+@State(Scope.Benchmark)
+public class HierarchyState {
+	@Param({"4"})
+	public int depth;
+	
+	@Param({"10"})
+	public int fanOut;
+	
+	@Param({"0.2"})
+	public double duplicateNameRatio;
+	
+	@Param({"3"})
+	public int propertyColumns;
+	
+	@Param({"0.5"})
+	public double filldownSparsity;
+	
+	@Param({"0"})
+	public int ignoredColumns;
+	
+	public File csvFile;
+	public File outputFile;
+	
+	@Setup
+	public void writeInput() throws IOException{
+		csvFile = File.createTempFile("hierarchy", ".csv");
+		outputFile = File.createTempFile("hierarchy", ".xml");
+		new SyntheticHierarchy(depth, fanOut, duplicateNameRatio, propertyColumns, filldownSparsity, ignoredColumns, 42).write(csvFile);
+	}
+	
+	@TearDown
+	public void deleteFiles(){
+		csvFile.delete();
+		outputFile.delete();
+	}
+	
+	//settings like in the README example, the key value pairs replace or extend them
+	public Map<String, String> createSettings(String... keyValuePairs){
+		Map<String, String> settingsMap = new TreeMap<String, String>();
+		settingsMap.put(HierarchyGenerator.inputFileKey, csvFile.getPath());
+		settingsMap.put(HierarchyGenerator.outputFileKey, outputFile.getPath());
+		settingsMap.put(HierarchyGenerator.hierarchyColumnsKey, columns(1, depth));
+		settingsMap.put(HierarchyGenerator.propertyColumnsKey, columns(depth+1, propertyColumns));
+		settingsMap.put(HierarchyGenerator.filldownKey, "true");
+		settingsMap.put(HierarchyGenerator.showBroaderReferenceKey, "true");
+		settingsMap.put(HierarchyGenerator.showNarrowerReferenceKey, "true");
+		settingsMap.put(HierarchyGenerator.defaultPrefix+HierarchyGenerator.elementTemplateKey, "<id>{\n\tname = \"<name>\"\n\t<relations><properties>}");
+		settingsMap.put(HierarchyGenerator.defaultPrefix+HierarchyGenerator.broaderReferenceTemplateKey, "isChildOf <parent>");
+		settingsMap.put(HierarchyGenerator.defaultPrefix+HierarchyGenerator.narrowerReferenceTemplateKey, "isParentOf <child>");
+		settingsMap.put(HierarchyGenerator.defaultPrefix+HierarchyGenerator.propertyTemplateKey, "<property>: <value>");
+		for(int index = 0; index+1 < keyValuePairs.length; index += 2){
+			settingsMap.put(keyValuePairs[index], keyValuePairs[index+1]);
+		}
+		return settingsMap;
+	}
+	
+	protected static String columns(int firstColumn, int count){
+		StringBuilder columns = new StringBuilder();
+		for(int column = firstColumn; column < firstColumn+count; column++){
+			if(columns.length() > 0){
+				columns.append(',');
+			}
+			columns.append(column);
+		}
+		return columns.toString();
+	}
+	
+	public HierarchyNode buildTree(HierarchyGenerator hierarchyGenerator) throws IOException, InterruptedException{
+		TreeBuilder treeBuilder = new TreeBuilder(hierarchyGenerator);
+		new InputReader(hierarchyGenerator).read(csvFile, treeBuilder);
+		return treeBuilder.build();
+	}
+}
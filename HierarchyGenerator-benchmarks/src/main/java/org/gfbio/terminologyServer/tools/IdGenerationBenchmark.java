@@ -0,0 +1,78 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Generates the ids of all nodes of a tree in the order of TreeBuilder.build() with every id type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdGenerationBenchmark {
+	@Param({"nameBased", "numeric", "ordered_numeric"})
+	public String idType;
+	
+	protected HierarchyGenerator hierarchyGenerator;
+	protected HierarchyNode[] parentNodes;
+	protected HierarchyNode[] nodes;
+	protected int[] siblingNumbers;
+	
+	@Setup
+	public void buildTree(HierarchyState state) throws IOException, InterruptedException, HierarchyGeneratorException{
+		hierarchyGenerator = new HierarchyGenerator(state.createSettings(HierarchyGenerator.idTypeKey, idType));
+		HierarchyNode rootNode = state.buildTree(hierarchyGenerator);
+		List<HierarchyNode> parentNodeList = new ArrayList<HierarchyNode>();
+		List<HierarchyNode> nodeList = new ArrayList<HierarchyNode>();
+		List<Integer> siblingNumberList = new ArrayList<Integer>();
+		List<HierarchyNode> levelParentNodes = new ArrayList<HierarchyNode>();
+		levelParentNodes.add(rootNode);
+		while(!levelParentNodes.isEmpty()){
+			List<HierarchyNode> nextLevelParentNodes = new ArrayList<HierarchyNode>();
+			for(HierarchyNode parentNode:levelParentNodes){
+				for(int childIndex = 0; childIndex < parentNode.getChildNodeCount(); childIndex++){
+					HierarchyNode childNode = parentNode.getChildNode(childIndex);
+					parentNodeList.add(parentNode);
+					nodeList.add(childNode);
+					siblingNumberList.add(childIndex+1);
+					nextLevelParentNodes.add(childNode);
+				}
+			}
+			levelParentNodes = nextLevelParentNodes;
+		}
+		parentNodes = parentNodeList.toArray(new HierarchyNode[parentNodeList.size()]);
+		nodes = nodeList.toArray(new HierarchyNode[nodeList.size()]);
+		siblingNumbers = new int[siblingNumberList.size()];
+		for(int index = 0; index < siblingNumbers.length; index++){
+			siblingNumbers[index] = siblingNumberList.get(index);
+		}
+	}
+	
+	@Benchmark
+	public void generateIds(Blackhole blackhole){
+		//start over, otherwise every invocation would only create suffixed name based ids
+		hierarchyGenerator.numericIdCounter = hierarchyGenerator.settings.numericStartId;
+		hierarchyGenerator.nameIdAllocator = new NameIdAllocator();
+		for(int index = 0; index < nodes.length; index++){
+			blackhole.consume(hierarchyGenerator.generateNewID(nodes[index].getName(), parentNodes[index], siblingNumbers[index]));
+		}
+	}
+}
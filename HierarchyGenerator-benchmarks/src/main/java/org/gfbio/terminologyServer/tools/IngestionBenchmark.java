@@ -0,0 +1,82 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads the CSV input without building the tree, with and without fill down, with the channel reader and with opencsv.
+ * For inputs of several gigabytes use a larger hierarchy with columns that are not used,
+ * e.g. -p depth=6 -p fanOut=16 -p ignoredColumns=4 (about 16.7 million lines, more than 4 GB).
+ * The parallel parsing is measured with -p csvParser=channel -p readThreads=1,2,4,8, the parsing on a reader thread with -p pipeline=false,true.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestionBenchmark {
+	@Param({"channel", "opencsv"})
+	public String csvParser;
+	
+	//only used by the channel parser
+	@Param({"1"})
+	public int readThreads;
+	
+	@Param({"false"})
+	public boolean pipeline;
+	
+	protected HierarchyGenerator hierarchyGenerator;
+	protected HierarchyGenerator filldownHierarchyGenerator;
+	
+	@Setup
+	public void createGenerators(HierarchyState state) throws HierarchyGeneratorException{
+		hierarchyGenerator = new HierarchyGenerator(state.createSettings(HierarchyGenerator.filldownKey, "false",
+				HierarchyGenerator.csvParserKey, csvParser, HierarchyGenerator.readThreadsKey, Integer.toString(readThreads),
+				HierarchyGenerator.pipelineKey, Boolean.toString(pipeline)));
+		filldownHierarchyGenerator = new HierarchyGenerator(state.createSettings(HierarchyGenerator.csvParserKey, csvParser,
+				HierarchyGenerator.readThreadsKey, Integer.toString(readThreads), HierarchyGenerator.pipelineKey, Boolean.toString(pipeline)));
+	}
+	
+	@Benchmark
+	public int readLines(HierarchyState state) throws IOException{
+		return read(hierarchyGenerator, state);
+	}
+	
+	@Benchmark
+	public int readLinesWithFilldown(HierarchyState state) throws IOException{
+		return read(filldownHierarchyGenerator, state);
+	}
+	
+	protected int read(HierarchyGenerator hierarchyGenerator, HierarchyState state) throws IOException{
+		LineCounter lineCounter = new LineCounter(hierarchyGenerator);
+		new InputReader(hierarchyGenerator).read(state.csvFile, lineCounter);
+		return lineCounter.valueLength;
+	}
+	
+	//takes the place of the tree builder, only looks at the values so that reading them is not optimized away
+	protected static class LineCounter extends TreeBuilder {
+		protected int valueLength;
+		
+		protected LineCounter(HierarchyGenerator hierarchyGenerator) {
+			super(hierarchyGenerator);
+		}
+		
+		@Override
+		public void addLine(InputLine line){
+			valueLength += line.values[0].length();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders all elements of a tree that was built before to a writer that only counts the characters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+	@Param({"1", "4"})
+	public int renderThreads;
+	
+	@Param({"rows", "dictionary"})
+	public String lineStorage;
+	
+	protected HierarchyWriter hierarchyWriter;
+	protected HierarchyNode rootNode;
+	
+	@Setup
+	public void buildTree(HierarchyState state) throws IOException, InterruptedException, HierarchyGeneratorException{
+		HierarchyGenerator hierarchyGenerator = new HierarchyGenerator(state.createSettings(HierarchyGenerator.renderThreadsKey, Integer.toString(renderThreads), HierarchyGenerator.lineStorageKey, lineStorage));
+		rootNode = state.buildTree(hierarchyGenerator);
+		hierarchyWriter = new HierarchyWriter(hierarchyGenerator);
+	}
+	
+	@Benchmark
+	public long writeNodes() throws IOException{
+		CountingWriter out = new CountingWriter();
+		hierarchyWriter.writeNodes(rootNode, out);
+		return out.count;
+	}
+	
+	protected static class CountingWriter extends Writer {
+		protected long count;
+		
+		@Override
+		public void write(char[] characters, int offset, int length) {
+			count += length;
+		}
+		
+		@Override
+		public void write(int character) {
+			count++;
+		}
+		
+		@Override
+		public void write(String text, int offset, int length) {
+			count += length;
+		}
+		
+		@Override
+		public void flush() {
+		}
+		
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Writes a CSV file with a synthetic hierarchy: every line is the path from a top level term to a leaf
+ * followed by the property values of the leaf.
+ * 
+ * depth: number of hierarchy columns
+ * fanOut: number of children of every term
+ * duplicateNameRatio: share of the terms that take their name from a small pool of names shared by all levels
+ * propertyColumns: number of property columns, their values repeat a lot like language codes or status flags
+ * filldownSparsity: probability that a hierarchy value that is the same as in the previous line is left empty
+ * ignoredColumns: number of columns after the property columns that are neither hierarchy nor property columns,
+ * quoted free text with separators and quotes in it like comments or descriptions
+ */
+public class SyntheticHierarchy {
+	protected static final int duplicateNamePoolSize = 50;
+	protected static final int propertyValueCount = 20;
+	
+	protected final int depth;
+	protected final int fanOut;
+	protected final double duplicateNameRatio;
+	protected final int propertyColumns;
+	protected final double filldownSparsity;
+	protected final int ignoredColumns;
+	protected final Random random;
+	
+	protected int nameCounter;
+	
+	public SyntheticHierarchy(int depth, int fanOut, double duplicateNameRatio, int propertyColumns, double filldownSparsity, int ignoredColumns, long seed) {
+		this.depth = depth;
+		this.fanOut = fanOut;
+		this.duplicateNameRatio = duplicateNameRatio;
+		this.propertyColumns = propertyColumns;
+		this.filldownSparsity = filldownSparsity;
+		this.ignoredColumns = ignoredColumns;
+		this.random = new Random(seed);
+	}
+	
+	public int getLineCount(){
+		int lineCount = 1;
+		for(int level = 0; level < depth; level++){
+			lineCount *= fanOut;
+		}
+		return lineCount;
+	}
+	
+	public void write(File csvFile) throws IOException{
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile), "UTF-8"), 65536);
+		try{
+			nameCounter = 0;
+			String[] path = new String[depth];
+			String[] previousPath = new String[depth];
+			writeLevel(0, path, previousPath, out);
+		}finally{
+			out.close();
+		}
+	}
+	
+	protected void writeLevel(int level, String[] path, String[] previousPath, Writer out) throws IOException{
+		for(int child = 0; child < fanOut; child++){
+			path[level] = createName(level);
+			if(level < depth-1){
+				writeLevel(level+1, path, previousPath, out);
+			}else{
+				writeLine(path, previousPath, out);
+				System.arraycopy(path, 0, previousPath, 0, depth);
+			}
+		}
+	}
+	
+	protected String createName(int level){
+		nameCounter++;
+		if(random.nextDouble() < duplicateNameRatio){
+			return "term"+random.nextInt(duplicateNamePoolSize);
+		}
+		return "term"+level+"_"+nameCounter;
+	}
+	
+	protected void writeLine(String[] path, String[] previousPath, Writer out) throws IOException{
+		//only leading values can be filled down
+		boolean leading = true;
+		for(int level = 0; level < depth; level++){
+			if(level > 0){
+				out.write(',');
+			}
+			leading = leading && path[level].equals(previousPath[level]) && random.nextDouble() < filldownSparsity;
+			if(!leading){
+				out.write(path[level]);
+			}
+		}
+		for(int property = 0; property < propertyColumns; property++){
+			out.write(',');
+			out.write("value"+property+"_"+random.nextInt(propertyValueCount));
+		}
+		for(int column = 0; column < ignoredColumns; column++){
+			out.write(",\"note "+column+" on "+path[depth-1]+", see \"\"sources\"\" "+random.nextInt(1000)+"\"");
+		}
+		out.write('\n');
+	}
+	
+	//SyntheticHierarchy <csv file> [depth] [fanOut] [duplicateNameRatio] [propertyColumns] [filldownSparsity] [ignoredColumns]
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0){
+			System.out.println("Usage: SyntheticHierarchy <csv file> [depth] [fanOut] [duplicateNameRatio] [propertyColumns] [filldownSparsity] [ignoredColumns]");
+			System.exit(1);
+		}
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int fanOut = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		double duplicateNameRatio = args.length > 3 ? Double.parseDouble(args[3]) : 0.2;
+		int propertyColumns = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+		double filldownSparsity = args.length > 5 ? Double.parseDouble(args[5]) : 0.5;
+		int ignoredColumns = args.length > 6 ? Integer.parseInt(args[6]) : 0;
+		SyntheticHierarchy hierarchy = new SyntheticHierarchy(depth, fanOut, duplicateNameRatio, propertyColumns, filldownSparsity, ignoredColumns, 42);
+		hierarchy.write(new File(args[0]));
+		System.out.println("Wrote "+hierarchy.getLineCount()+" lines to "+args[0]+".");
+	}
+}
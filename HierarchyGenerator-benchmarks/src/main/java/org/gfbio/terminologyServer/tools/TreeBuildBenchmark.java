@@ -0,0 +1,65 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds the tree from lines that were read before, including the assignment of the ids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBuildBenchmark {
+	@Param({"1", "4"})
+	public int buildThreads;
+	
+	@Param({"rows", "dictionary"})
+	public String lineStorage;
+	
+	protected Map<String, String> settingsMap;
+	protected List<InputLine> lines;
+	
+	@Setup
+	public void readLines(HierarchyState state) throws IOException, HierarchyGeneratorException{
+		settingsMap = state.createSettings(HierarchyGenerator.buildThreadsKey, Integer.toString(buildThreads), HierarchyGenerator.lineStorageKey, lineStorage);
+		final List<InputLine> readLines = new ArrayList<InputLine>();
+		HierarchyGenerator hierarchyGenerator = new HierarchyGenerator(settingsMap);
+		new InputReader(hierarchyGenerator).read(state.csvFile, new TreeBuilder(hierarchyGenerator) {
+			@Override
+			public void addLine(InputLine line){
+				readLines.add(line);
+			}
+		});
+		lines = readLines;
+	}
+	
+	@Benchmark
+	public HierarchyNode buildTree() throws InterruptedException, HierarchyGeneratorException, IOException{
+		//a new generator for every tree, the line store and the ids belong to one tree
+		HierarchyGenerator hierarchyGenerator = new HierarchyGenerator(settingsMap);
+		TreeBuilder treeBuilder = new TreeBuilder(hierarchyGenerator);
+		for(InputLine line:lines){
+			//the builder replaces the hierarchy values with the pooled names
+			treeBuilder.addLine(new InputLine(line.lineNumber, line.values.clone()));
+		}
+		return treeBuilder.build();
+	}
+}
@@ -0,0 +1,119 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gfbio.terminologyServer.tools.util.LinePrefixOutputStream;
+import org.gfbio.terminologyServer.tools.util.SettingsLoader;
+
+/**
+ * Runs the jobs of several settings files in one JVM, on a pool of -threads threads (1 by default).
+ * Every job has its own generator, a job that fails is reported and does not stop the other jobs.
+ * While the jobs run, every line of System.out starts with the settings file of the job that wrote it, also the lines of the threads of a job.
+ */
+public class BatchRunner {
+	
+	//returns the number of failed jobs
+	public int run(String[] args){
+		int threads = 1;
+		List<String> settingsFiles = new ArrayList<String>();
+		for(int index = 0; index < args.length; index++){
+			if(args[index].equals(HierarchyGenerator.threadsOption) && index+1 < args.length){
+				index++;
+				if(!args[index].matches("^[1-9]\\d{0,3}$")){
+					System.out.println("Option '"+HierarchyGenerator.threadsOption+"' must be a positive integer. Instead it is '"+args[index]+"'. It was now set to 1.");
+				}else{
+					threads = Integer.parseInt(args[index]);
+				}
+			}else{
+				settingsFiles.add(args[index]);
+			}
+		}
+		if(settingsFiles.isEmpty()){
+			System.out.println("No settings files provided. Usage: HierarchyGenerator "+HierarchyGenerator.batchOption+" ["+HierarchyGenerator.threadsOption+" n] <settings file> ...");
+			return 1;
+		}
+		
+		PrintStream systemOut = System.out;
+		LinePrefixOutputStream jobOutput = new LinePrefixOutputStream(systemOut, Charset.defaultCharset());
+		System.setOut(new PrintStream(jobOutput, true));
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, settingsFiles.size()));
+		int failedJobs = 0;
+		try{
+			List<Future<GenerationResult>> results = new ArrayList<Future<GenerationResult>>();
+			for(String settingsFile:settingsFiles){
+				results.add(executor.submit(new Job(settingsFile, jobOutput)));
+			}
+			//the results are reported in the order of the settings files
+			for(int index = 0; index < settingsFiles.size(); index++){
+				try {
+					System.out.println("Settings file '"+settingsFiles.get(index)+"': "+results.get(index).get()+".");
+				} catch (ExecutionException e) {
+					failedJobs++;
+					Throwable cause = e.getCause();
+					if(cause instanceof HierarchyGeneratorException){
+						System.out.println("Settings file '"+settingsFiles.get(index)+"' failed: "+cause.getMessage());
+					}else{
+						//the lines of the stack trace are marked like the messages of the job
+						jobOutput.setPrefix(getPrefix(settingsFiles.get(index)));
+						System.out.println("Settings file '"+settingsFiles.get(index)+"' failed:");
+						cause.printStackTrace(System.out);
+						jobOutput.setPrefix(null);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			System.out.println("Interrupted, the remaining jobs are cancelled.");
+			failedJobs++;
+		}finally{
+			executor.shutdownNow();
+			System.out.flush();
+			try {
+				jobOutput.close();
+			} catch (IOException e) {
+				//the lines are written to the original System.out, which does not throw
+			}
+			System.setOut(systemOut);
+		}
+		System.out.println((settingsFiles.size()-failedJobs)+" of "+settingsFiles.size()+" jobs finished.");
+		return failedJobs;
+	}
+	
+	protected static String getPrefix(String settingsFile){
+		return "["+settingsFile+"] ";
+	}
+	
+	protected static class Job implements Callable<GenerationResult> {
+		protected final String settingsFile;
+		protected final LinePrefixOutputStream jobOutput;
+		
+		protected Job(String settingsFile, LinePrefixOutputStream jobOutput) {
+			this.settingsFile = settingsFile;
+			this.jobOutput = jobOutput;
+		}
+		
+		@Override
+		public GenerationResult call() throws Exception {
+			//set before the job starts its threads, they inherit the prefix
+			jobOutput.setPrefix(getPrefix(settingsFile));
+			try{
+				File file = new File(settingsFile);
+				if(!file.isFile()){
+					throw new HierarchyGeneratorException("Settings file '"+settingsFile+"' does not exist.");
+				}
+				return new HierarchyGenerator(SettingsLoader.loadSettings(file)).generate();
+			}finally{
+				jobOutput.setPrefix(null);
+			}
+		}
+	}
+}
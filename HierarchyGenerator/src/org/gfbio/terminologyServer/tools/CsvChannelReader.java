@@ -0,0 +1,289 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a UTF-8 encoded CSV input from a channel with the same quoting rules as the opencsv 3.0 CSVReader:
+ * the escape character is \, white space before a quote inside a value is dropped, lines end with \n, \r or \r\n
+ * and a quoted value can span several lines. A quoted value that is not closed at the end of the input is dropped.
+ * The input is read in large blocks and split into values on the bytes, only the values of the used columns are decoded into strings,
+ * the values of the other columns are "". The separator and the quote character must be ASCII characters, see supports().
+ */
+public class CsvChannelReader {
+	protected static final int bufferSize = 1 << 20;
+	protected static final byte escape = '\\';
+	protected static final Charset utf8 = Charset.forName("UTF-8");
+
+	protected final ReadableByteChannel channel;
+	protected final byte separator;
+	protected final byte quote;
+	//indexed by column-1, the values of the other columns are not decoded
+	protected final boolean[] usedColumns;
+
+	//the bytes read from the channel, the current line is between lineStart and lineEnd
+	protected byte[] buffer;
+	protected ByteBuffer byteBuffer;
+	//the number of bytes of the channel in front of the buffer
+	protected long bufferStart;
+	protected int position;
+	protected int limit;
+	protected int lineStart;
+	protected int lineEnd;
+	protected boolean endOfInput;
+	//the line ended with \r, a following \n belongs to it
+	protected boolean skipLineFeed;
+
+	//like in opencsv inField is kept from one line to the next
+	protected boolean inField;
+	//the current value is quoted and continues in the next line
+	protected boolean pending;
+	protected byte[] value = new byte[256];
+	protected int valueLength;
+	protected String[] values = new String[16];
+	protected int valueCount;
+
+	public CsvChannelReader(ReadableByteChannel channel, HierarchySettings settings) {
+		this(channel, settings, false);
+	}
+
+	//a channel that starts with a line in the middle of the input needs the inField state of opencsv at the end of the line before
+	public CsvChannelReader(ReadableByteChannel channel, HierarchySettings settings, boolean inField) {
+		this.channel = channel;
+		this.inField = inField;
+		this.separator = (byte)settings.separatorCharacter;
+		this.quote = (byte)settings.quoteCharacter;
+		int columnCount = 0;
+		for(int column:settings.hierarchyColumns){
+			columnCount = Math.max(columnCount, column);
+		}
+		for(int column:settings.propertyColumns){
+			columnCount = Math.max(columnCount, column);
+		}
+		usedColumns = new boolean[columnCount];
+		for(int column:settings.hierarchyColumns){
+			usedColumns[column-1] = true;
+		}
+		for(int column:settings.propertyColumns){
+			usedColumns[column-1] = true;
+		}
+		buffer = new byte[bufferSize];
+		byteBuffer = ByteBuffer.wrap(buffer);
+	}
+
+	//false if the separator or the quote character can not be found on the bytes, the input has to be read with opencsv then
+	public static boolean supports(HierarchySettings settings){
+		char separatorCharacter = settings.separatorCharacter;
+		char quoteCharacter = settings.quoteCharacter;
+		return separatorCharacter > 0 && separatorCharacter < 0x80 && quoteCharacter < 0x80 && separatorCharacter != quoteCharacter
+				&& separatorCharacter != escape && quoteCharacter != escape
+				&& separatorCharacter != '\n' && separatorCharacter != '\r' && quoteCharacter != '\n' && quoteCharacter != '\r';
+	}
+
+	//the values of the next CSV line, null at the end of the input; with allColumns the values of all columns are decoded, e.g. for the column names
+	public String[] readNext(boolean allColumns) throws IOException{
+		valueCount = 0;
+		do{
+			if(!readLine()){
+				//the values before a value that is not closed are returned like by opencsv
+				pending = false;
+				return valueCount > 0 ? Arrays.copyOf(values, valueCount) : null;
+			}
+			parseLine(allColumns);
+		}while(pending);
+		return Arrays.copyOf(values, valueCount);
+	}
+
+	protected boolean readLine() throws IOException{
+		skipLineFeed();
+		int index = position;
+		while(true){
+			while(index < limit){
+				byte b = buffer[index];
+				if(b == '\n' || b == '\r'){
+					lineStart = position;
+					lineEnd = index;
+					position = index+1;
+					if(b == '\r'){
+						skipLineFeed = true;
+					}
+					return true;
+				}
+				index++;
+			}
+			if(endOfInput){
+				//the last line does not have to end with a line break
+				if(position < limit){
+					lineStart = position;
+					lineEnd = limit;
+					position = limit;
+					return true;
+				}
+				return false;
+			}
+			index -= position;
+			fill();
+		}
+	}
+
+	//skips the \n of a \r\n at the end of the last line, afterwards position is the start of the next line
+	protected void skipLineFeed() throws IOException{
+		if(skipLineFeed){
+			if(position == limit && !endOfInput){
+				fill();
+			}
+			if(position < limit && buffer[position] == '\n'){
+				position++;
+			}
+			skipLineFeed = false;
+		}
+	}
+
+	//moves the rest of the bytes to the start of the buffer and reads the next bytes, the buffer grows if a line does not fit into it
+	protected void fill() throws IOException{
+		int rest = limit-position;
+		if(rest == buffer.length){
+			buffer = Arrays.copyOf(buffer, buffer.length*2);
+			byteBuffer = ByteBuffer.wrap(buffer);
+		}else if(position > 0){
+			System.arraycopy(buffer, position, buffer, 0, rest);
+		}
+		bufferStart += position;
+		position = 0;
+		limit = rest;
+		byteBuffer.limit(buffer.length);
+		byteBuffer.position(limit);
+		int read = 0;
+		while(read == 0){
+			read = channel.read(byteBuffer);
+		}
+		if(read < 0){
+			endOfInput = true;
+		}else{
+			limit += read;
+		}
+	}
+
+	//the quoting rules of CSVParser.parseLine of opencsv 3.0 with multiple lines
+	protected void parseLine(boolean allColumns){
+		byte[] line = buffer;
+		int end = lineEnd;
+		boolean inQuotes = false;
+		if(pending){
+			//value already holds the start of the value with a \n
+			inQuotes = true;
+			pending = false;
+		}else{
+			valueLength = 0;
+		}
+		boolean used = isUsedColumn(allColumns);
+		for(int index = lineStart; index < end; index++){
+			byte b = line[index];
+			if(b == escape){
+				//an escape character that does not escape a quote or an escape character is dropped
+				if((inQuotes || inField) && index+1 < end && (line[index+1] == quote || line[index+1] == escape)){
+					append(line[index+1], used);
+					index++;
+				}
+			}else if(b == quote){
+				if((inQuotes || inField) && index+1 < end && line[index+1] == quote){
+					append(quote, used);
+					index++;
+				}else{
+					inQuotes = !inQuotes;
+					//a quote inside a value is kept, unless only white space is in front of it
+					if(index-lineStart > 2 && line[index-1] != separator && index+1 < end && line[index+1] != separator
+							&& isAfterThirdCharacter(index)){
+						if(valueLength > 0 && isWhiteSpaceValue()){
+							valueLength = 0;
+						}else{
+							append(quote, used);
+						}
+					}
+				}
+				inField = !inField;
+			}else if(b == separator && !inQuotes){
+				addValue(used);
+				valueLength = 0;
+				inField = false;
+				used = isUsedColumn(allColumns);
+			}else{
+				//copies the bytes up to the next special byte at once
+				int runEnd = index+1;
+				while(runEnd < end && line[runEnd] != separator && line[runEnd] != quote && line[runEnd] != escape){
+					runEnd++;
+				}
+				if(used){
+					appendBytes(line, index, runEnd-index);
+				}
+				index = runEnd-1;
+				inField = true;
+			}
+		}
+		if(inQuotes){
+			append((byte)'\n', used);
+			pending = true;
+		}else{
+			addValue(used);
+		}
+	}
+
+	protected boolean isUsedColumn(boolean allColumns){
+		return allColumns || (valueCount < usedColumns.length && usedColumns[valueCount]);
+	}
+
+	//opencsv counts the position of a quote in characters, not in bytes
+	protected boolean isAfterThirdCharacter(int index){
+		for(int byteIndex = lineStart; byteIndex < lineStart+3; byteIndex++){
+			if(buffer[byteIndex] < 0){
+				return new String(buffer, lineStart, index-lineStart, utf8).length() > 2;
+			}
+		}
+		return true;
+	}
+
+	protected boolean isWhiteSpaceValue(){
+		for(int index = 0; index < valueLength; index++){
+			if(value[index] < 0){
+				String decodedValue = new String(value, 0, valueLength, utf8);
+				for(int charIndex = 0; charIndex < decodedValue.length(); charIndex++){
+					if(!Character.isWhitespace(decodedValue.charAt(charIndex))){
+						return false;
+					}
+				}
+				return true;
+			}
+			if(!Character.isWhitespace((char)value[index])){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected void append(byte b, boolean used){
+		if(used){
+			if(valueLength == value.length){
+				value = Arrays.copyOf(value, value.length*2);
+			}
+			value[valueLength++] = b;
+		}
+	}
+
+	protected void appendBytes(byte[] bytes, int offset, int length){
+		if(valueLength+length > value.length){
+			value = Arrays.copyOf(value, Math.max(value.length*2, valueLength+length));
+		}
+		System.arraycopy(bytes, offset, value, valueLength, length);
+		valueLength += length;
+	}
+
+	protected void addValue(boolean used){
+		if(valueCount == values.length){
+			values = Arrays.copyOf(values, values.length*2);
+		}
+		values[valueCount++] = used && valueLength > 0 ? new String(value, 0, valueLength, utf8) : "";
+	}
+}
@@ -0,0 +1,131 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Follows the quoting rules of the CsvChannelReader through a chunk of the input without creating values.
+ * A chunk starts with a line, but the line can continue a quoted value of the chunk before it, so the chunk is followed
+ * for all four states of opencsv in which it can start: in a quoted value or not (inQuotes) and with a value started or not (inField).
+ * For each of them the scan finds the state at the end of the chunk and the first line that ends outside of a quoted value,
+ * i.e. the first position at which a CSV line can start. The states are numbered inQuotes*2+inField.
+ */
+public class CsvChunkScanner extends CsvChannelReader {
+	public static final int states = 4;
+
+	//the state at the end of the chunk for every start state
+	public final int[] endStates = new int[states];
+	//the position in the chunk after the first line that ends outside of a quoted value, -1 if all lines of the chunk are in a quoted value
+	public final long[] lineStarts = new long[states];
+	//the inField state at that position
+	public final boolean[] lineStartInFields = new boolean[states];
+	//the positions of the separators, quotes and escape characters of the current line, the other bytes only start a value
+	protected int[] specialBytes = new int[64];
+	protected int specialByteCount;
+
+	public CsvChunkScanner(ReadableByteChannel channel, HierarchySettings settings) {
+		super(channel, settings);
+	}
+
+	public static int state(boolean inQuotes, boolean inField){
+		return (inQuotes ? 2 : 0)+(inField ? 1 : 0);
+	}
+
+	public static boolean isInQuotes(int state){
+		return state >= 2;
+	}
+
+	public static boolean isInField(int state){
+		return (state & 1) != 0;
+	}
+
+	public void scan() throws IOException{
+		for(int state = 0; state < states; state++){
+			endStates[state] = state;
+			//a line starts at the start of the chunk if it does not start in a quoted value
+			lineStarts[state] = isInQuotes(state) ? -1 : 0;
+			lineStartInFields[state] = isInField(state);
+		}
+		//the state at the end of the line for the state at its start, start states that lead to the same state go on together
+		int[] lineEndStates = new int[states];
+		while(readLine()){
+			for(int state = 0; state < states; state++){
+				lineEndStates[state] = -1;
+			}
+			findSpecialBytes();
+			for(int state = 0; state < states; state++){
+				int endState = endStates[state];
+				if(lineEndStates[endState] < 0){
+					lineEndStates[endState] = followLine(endState);
+				}
+				endStates[state] = lineEndStates[endState];
+			}
+			//the line is followed for all states before the buffer can move
+			for(int state = 0; state < states; state++){
+				if(lineStarts[state] < 0 && !isInQuotes(endStates[state])){
+					skipLineFeed();
+					lineStarts[state] = bufferStart+position;
+					lineStartInFields[state] = isInField(endStates[state]);
+				}
+			}
+		}
+	}
+
+	protected void findSpecialBytes(){
+		byte[] line = buffer;
+		specialByteCount = 0;
+		for(int index = lineStart; index < lineEnd; index++){
+			byte b = line[index];
+			if(b == separator || b == quote || b == escape){
+				if(specialByteCount == specialBytes.length){
+					specialBytes = Arrays.copyOf(specialBytes, specialBytes.length*2);
+				}
+				specialBytes[specialByteCount++] = index;
+			}
+		}
+	}
+
+	//the state at the end of the current line, the same steps as in parseLine on the special bytes
+	protected int followLine(int state){
+		boolean inQuotes = isInQuotes(state);
+		boolean inField = isInField(state);
+		byte[] line = buffer;
+		int end = lineEnd;
+		//the first byte that is not followed yet
+		int next = lineStart;
+		for(int specialByte = 0; specialByte < specialByteCount; specialByte++){
+			int index = specialBytes[specialByte];
+			if(index < next){
+				//escaped by the byte before
+				continue;
+			}
+			if(index > next){
+				//other bytes in front of it
+				inField = true;
+			}
+			byte b = line[index];
+			if(b == escape){
+				if((inQuotes || inField) && index+1 < end && (line[index+1] == quote || line[index+1] == escape)){
+					index++;
+				}
+			}else if(b == quote){
+				if((inQuotes || inField) && index+1 < end && line[index+1] == quote){
+					index++;
+				}else{
+					inQuotes = !inQuotes;
+				}
+				inField = !inField;
+			}else if(!inQuotes){
+				inField = false;
+			}else{
+				inField = true;
+			}
+			next = index+1;
+		}
+		if(next < end){
+			inField = true;
+		}
+		return state(inQuotes, inField);
+	}
+}
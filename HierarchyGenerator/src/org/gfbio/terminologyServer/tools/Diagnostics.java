@@ -0,0 +1,169 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the problems of a job (missing columns, fill down errors and missing templates) instead of printing every one of them.
+ * The problems are counted by category and column, the first diagnosticsExamples messages of each are kept
+ * and printed in a summary at the end of the job. With a diagnosticsFile every message is written to that file.
+ * Problems can be reported by several threads, the build, render and profile threads.
+ */
+public class Diagnostics {
+	public enum Category {
+		MISSING_HIERARCHY_COLUMN("missing hierarchy column"),
+		FILLDOWN("no value to fill down in hierarchy column"),
+		MISSING_PROPERTY_COLUMN("missing property column"),
+		MISSING_ELEMENT_TEMPLATE("no "+HierarchyGenerator.elementTemplateKey+" for column"),
+		MISSING_BROADER_REFERENCE_TEMPLATE("no "+HierarchyGenerator.broaderReferenceTemplateKey+" for column"),
+		MISSING_NARROWER_REFERENCE_TEMPLATE("no "+HierarchyGenerator.narrowerReferenceTemplateKey+" for column"),
+		MISSING_PROPERTY_TEMPLATE("no "+HierarchyGenerator.propertyTemplateKey+" for column");
+
+		protected final String description;
+
+		private Category(String description) {
+			this.description = description;
+		}
+	}
+
+	protected static class Problem {
+		protected int count;
+		protected final List<String> examples = new ArrayList<String>();
+	}
+
+	protected final HierarchyGenerator hierarchyGenerator;
+	protected final int maxExamples;
+	protected final String diagnosticsFile;
+	//problems by category and column
+	protected final Map<Category, Map<Integer, Problem>> problems = new EnumMap<Category, Map<Integer, Problem>>(Category.class);
+	protected int problemCount;
+	//opened with the first problem, so that a job that is started again does not leave an open file
+	protected Writer out;
+	protected boolean fileFailed;
+
+	public Diagnostics(HierarchyGenerator hierarchyGenerator) {
+		this.hierarchyGenerator = hierarchyGenerator;
+		this.maxExamples = hierarchyGenerator.settings.diagnosticsExamples;
+		this.diagnosticsFile = hierarchyGenerator.settings.diagnosticsFile;
+	}
+
+	//lineNumber is -1 and node is null if the problem does not have them
+	public synchronized void report(Category category, int column, int lineNumber, HierarchyNode node){
+		Map<Integer, Problem> columnProblems = problems.get(category);
+		if(columnProblems == null){
+			columnProblems = new TreeMap<Integer, Problem>();
+			problems.put(category, columnProblems);
+		}
+		Problem problem = columnProblems.get(column);
+		if(problem == null){
+			problem = new Problem();
+			columnProblems.put(column, problem);
+		}
+		problem.count++;
+		problemCount++;
+		//the message is only created if it is kept or written
+		if(problem.examples.size() < maxExamples || diagnosticsFile.length() > 0){
+			String message = createMessage(category, column, lineNumber, node);
+			if(problem.examples.size() < maxExamples){
+				problem.examples.add(message);
+			}
+			write(message);
+		}
+	}
+
+	protected String createMessage(Category category, int column, int lineNumber, HierarchyNode node){
+		String columnName = hierarchyGenerator.getColumnName(column);
+		switch(category){
+		case MISSING_HIERARCHY_COLUMN:
+		case MISSING_PROPERTY_COLUMN:
+			return "can not find column "+column+" "+(columnName != null ? "('"+columnName+"') " : "")+"in line "+lineNumber+".";
+		case FILLDOWN:
+			return "Error in line "+lineNumber+": could not fill down property in column "+column+(columnName != null ? " ("+columnName+")" : "");
+		case MISSING_ELEMENT_TEMPLATE:
+			return "Warning: There is no "+HierarchyGenerator.elementTemplateKey+" for column "+column+". The element "+node.id+" ('"+node.name+"') will be skipped.";
+		case MISSING_BROADER_REFERENCE_TEMPLATE:
+			return "Warning: There is no "+HierarchyGenerator.broaderReferenceTemplateKey+" for column "+column+". The references for node "+node.id+" ('"+node.name+"') will not be displayed.";
+		case MISSING_NARROWER_REFERENCE_TEMPLATE:
+			return "Warning: There is no "+HierarchyGenerator.narrowerReferenceTemplateKey+" for column "+column+". The references for node "+node.id+" ('"+node.name+"') will not be displayed.";
+		default:
+			return "Warning: There is no "+HierarchyGenerator.propertyTemplateKey+" for column "+column+". This property will not be displayed for node "+node.id+" ('"+node.name+"').";
+		}
+	}
+
+	protected void write(String message){
+		if(diagnosticsFile.length() == 0 || fileFailed){
+			return;
+		}
+		try{
+			open();
+			out.write(message);
+			out.write('\n');
+		}catch(IOException e){
+			reportFileFailure(e);
+		}
+	}
+
+	protected void open() throws IOException{
+		if(out == null){
+			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(diagnosticsFile)), "UTF8"), 65536);
+		}
+	}
+
+	protected void reportFileFailure(IOException e){
+		System.out.println("Diagnostics file '"+diagnosticsFile+"' could not be written: "+e.getMessage()+". The problems are only counted.");
+		fileFailed = true;
+		close();
+	}
+
+	public synchronized int getProblemCount(){
+		return problemCount;
+	}
+
+	//prints the summary and closes the diagnostics file, called at the end of the job
+	public synchronized void finish(){
+		if(problemCount > 0){
+			System.out.println(problemCount+" problems in the input or the settings"+(diagnosticsFile.length() > 0 ? ", all of them are listed in '"+diagnosticsFile+"'" : "")+":");
+			for(Map.Entry<Category, Map<Integer, Problem>> categoryProblems:problems.entrySet()){
+				for(Map.Entry<Integer, Problem> columnProblem:categoryProblems.getValue().entrySet()){
+					Problem problem = columnProblem.getValue();
+					System.out.println("  "+problem.count+" x "+categoryProblems.getKey().description+" "+columnProblem.getKey()+", e.g.:");
+					for(String example:problem.examples){
+						System.out.println("    "+example);
+					}
+					if(problem.count > problem.examples.size()){
+						System.out.println("    ... and "+(problem.count-problem.examples.size())+" more");
+					}
+				}
+			}
+		}
+		if(diagnosticsFile.length() > 0 && !fileFailed){
+			try{
+				//an empty file if there were no problems, the file of a previous job must not remain
+				open();
+			}catch(IOException e){
+				reportFileFailure(e);
+			}
+		}
+		close();
+	}
+
+	protected void close(){
+		if(out != null){
+			try{
+				out.close();
+			}catch(IOException e){
+				System.out.println("Diagnostics file '"+diagnosticsFile+"' could not be closed: "+e.getMessage());
+			}
+			out = null;
+		}
+	}
+}
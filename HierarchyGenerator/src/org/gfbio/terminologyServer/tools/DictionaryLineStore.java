@@ -0,0 +1,215 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps only the hierarchy and the property columns of the input lines.
+ * Every property column has its own dictionary of values and an int code per line, -1 if the line does not have the column.
+ * The codes are kept in arrays on the heap or in direct buffers outside of the heap.
+ * The hierarchy values are only kept until the tree is built, see compact(). Other columns are not kept at all.
+ */
+public class DictionaryLineStore extends LineStore {
+	protected final int[] hierarchyColumns;
+	//position of a column in the hierarchy and the property columns, indexed by column, -1 if it is not one of them
+	protected final int[] hierarchyPositions;
+	protected final int[] propertyPositions;
+	protected final int propertyColumnCount;
+	protected final boolean offHeap;
+
+	//the values of the hierarchy columns of each line, null if the line does not have the column
+	protected String[][] hierarchyValues;
+	protected int[] lineNumbers;
+	//codes of the values of each property column
+	protected IntBuffer[] codes;
+	protected final List<ArrayList<String>> dictionaries;
+	//only used while the lines are added
+	protected List<Map<String, Integer>> dictionaryCodes;
+	protected int capacity;
+	protected int size;
+
+	public DictionaryLineStore(HierarchySettings settings, boolean offHeap) {
+		this.offHeap = offHeap;
+		hierarchyColumns = settings.hierarchyColumns;
+		int maxColumn = 0;
+		for(int column:hierarchyColumns){
+			maxColumn = Math.max(maxColumn, column);
+		}
+		for(int column:settings.propertyColumns){
+			maxColumn = Math.max(maxColumn, column);
+		}
+		hierarchyPositions = new int[maxColumn+1];
+		propertyPositions = new int[maxColumn+1];
+		Arrays.fill(hierarchyPositions, -1);
+		Arrays.fill(propertyPositions, -1);
+		for(int position = 0; position < hierarchyColumns.length; position++){
+			hierarchyPositions[hierarchyColumns[position]] = position;
+		}
+		int propertyPosition = 0;
+		for(int column:settings.propertyColumns){
+			if(propertyPositions[column] == -1){
+				propertyPositions[column] = propertyPosition++;
+			}
+		}
+		propertyColumnCount = propertyPosition;
+
+		capacity = 1024;
+		size = 0;
+		hierarchyValues = new String[capacity][];
+		lineNumbers = new int[capacity];
+		codes = new IntBuffer[propertyColumnCount];
+		dictionaries = new ArrayList<ArrayList<String>>(propertyColumnCount);
+		dictionaryCodes = new ArrayList<Map<String, Integer>>(propertyColumnCount);
+		for(int position = 0; position < propertyColumnCount; position++){
+			codes[position] = allocate(capacity);
+			dictionaries.add(new ArrayList<String>());
+			dictionaryCodes.add(new HashMap<String, Integer>());
+		}
+	}
+
+	protected IntBuffer allocate(int capacity){
+		if(offHeap){
+			return ByteBuffer.allocateDirect(capacity*4).order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+		return IntBuffer.allocate(capacity);
+	}
+
+	@Override
+	public int add(InputLine line){
+		if(size == capacity){
+			grow();
+		}
+		String[] lineHierarchyValues = new String[hierarchyColumns.length];
+		for(int position = 0; position < hierarchyColumns.length; position++){
+			if(line.hasColumn(hierarchyColumns[position])){
+				lineHierarchyValues[position] = line.getValue(hierarchyColumns[position]);
+			}
+		}
+		hierarchyValues[size] = lineHierarchyValues;
+		lineNumbers[size] = line.lineNumber;
+		for(int column = 1; column < propertyPositions.length; column++){
+			int position = propertyPositions[column];
+			if(position >= 0){
+				codes[position].put(size, line.hasColumn(column) ? encode(position, line.getValue(column)) : -1);
+			}
+		}
+		return size++;
+	}
+
+	protected int encode(int position, String value){
+		Map<String, Integer> columnCodes = dictionaryCodes.get(position);
+		Integer code = columnCodes.get(value);
+		if(code == null){
+			List<String> dictionary = dictionaries.get(position);
+			code = dictionary.size();
+			dictionary.add(value);
+			columnCodes.put(value, code);
+		}
+		return code;
+	}
+
+	protected void grow(){
+		int newCapacity = capacity + (capacity >> 1);
+		hierarchyValues = Arrays.copyOf(hierarchyValues, newCapacity);
+		lineNumbers = Arrays.copyOf(lineNumbers, newCapacity);
+		for(int position = 0; position < propertyColumnCount; position++){
+			IntBuffer newCodes = allocate(newCapacity);
+			IntBuffer oldCodes = codes[position];
+			oldCodes.rewind();
+			newCodes.put(oldCodes);
+			codes[position] = newCodes;
+		}
+		capacity = newCapacity;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getLineNumber(int line){
+		return lineNumbers[line];
+	}
+
+	@Override
+	public boolean hasColumn(int line, int column){
+		if(isPropertyColumn(column)){
+			return codes[propertyPositions[column]].get(line) >= 0;
+		}
+		return getHierarchyValue(line, column) != null;
+	}
+
+	@Override
+	public String getValue(int line, int column){
+		if(isPropertyColumn(column)){
+			return dictionaries.get(propertyPositions[column]).get(codes[propertyPositions[column]].get(line));
+		}
+		return getHierarchyValue(line, column);
+	}
+
+	@Override
+	public void setValue(int line, int column, String value){
+		if(!isHierarchyColumn(column)){
+			throw new IllegalArgumentException("Only the values of hierarchy columns can be changed, column "+column+" is not a hierarchy column.");
+		}
+		hierarchyValues[line][hierarchyPositions[column]] = value;
+	}
+
+	protected String getHierarchyValue(int line, int column){
+		if(!isHierarchyColumn(column)){
+			throw new IllegalArgumentException("Column "+column+" is neither a hierarchy nor a property column and is not kept.");
+		}
+		if(hierarchyValues == null){
+			throw new IllegalStateException("The values of the hierarchy column "+column+" are not kept after the hierarchy is built.");
+		}
+		return hierarchyValues[line][hierarchyPositions[column]];
+	}
+
+	protected boolean isPropertyColumn(int column){
+		return column < propertyPositions.length && propertyPositions[column] >= 0;
+	}
+
+	protected boolean isHierarchyColumn(int column){
+		return column < hierarchyPositions.length && hierarchyPositions[column] >= 0;
+	}
+
+	//drops the hierarchy values and the lookup of the codes
+	@Override
+	public void compact(){
+		hierarchyValues = null;
+		dictionaryCodes = null;
+		for(ArrayList<String> dictionary:dictionaries){
+			dictionary.trimToSize();
+		}
+	}
+
+	@Override
+	public long estimateLineBytes() {
+		//the line numbers and the codes, the codes are counted even if they are outside of the heap
+		long bytes = MemoryReport.align(MemoryReport.arrayHeader + 4L*capacity);
+		bytes += propertyColumnCount*4L*capacity;
+		if(hierarchyValues != null){
+			bytes += MemoryReport.array(capacity) + size*MemoryReport.array(hierarchyColumns.length);
+		}
+		return bytes;
+	}
+
+	@Override
+	public long estimateValueBytes() {
+		long bytes = 0;
+		for(List<String> dictionary:dictionaries){
+			bytes += MemoryReport.array(dictionary.size());
+			for(String value:dictionary){
+				bytes += MemoryReport.string(value);
+			}
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,791 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.gfbio.terminologyServer.tools.HierarchySettings.IdType;
+import org.gfbio.terminologyServer.tools.util.CountingOutputStream;
+import org.gfbio.terminologyServer.tools.util.ExternalSorter;
+
+/**
+ * Builds the hierarchy of an input that does not fit into the memory with sorted runs in temporary files,
+ * the output has the same order and the same ids as with the TreeBuilder and the HierarchyWriter.
+ * A line leaves a node with its next name, to the child of that name. The level of the child is the lowest level from which a line
+ * leaves with its name, like in the passes of the TreeBuilder. A line that leaves from a higher level goes on with the same name below the child.
+ * The tree order is the order of creation of the children in the TreeBuilder, by level and then by the line that created them.
+ * The lines of a node are in the order in which they reached it: by the pass in which they reached it, then in the order of the parent node.
+ * The tree and the order of the lines are found in several sorted passes:
+ * 1. the lines ordered by their path and their next name give the children of the nodes of one depth, this is repeated depth by depth
+ *    until every line has reached its node
+ * 2. the nodes ordered by path and the lines ordered by path give every node with its own lines: the property values of its lines are written
+ *    to a property file and when a node is complete its children are ranked in tree order
+ * 3. the nodes ordered by path give the ranks of all ancestors of a node, ordered by this rank path the nodes are in tree order
+ * 4. the nodes ordered by level, the rank path of their parent and their rank get their ids, in the same order as in TreeBuilder.build()
+ * 5. the nodes ordered by rank path find the ids of their parent and their children
+ * 6. the nodes ordered by the level and the rank path of their parent and their rank are written like by the HierarchyWriter, with their lines read from the property file
+ * Each sorter keeps up to a quarter of externalBuildMemory, apart from that only the children of the nodes of one path are kept.
+ * With name based ids the used ids are kept to make them unique.
+ */
+public class ExternalTreeBuilder extends TreeBuilder {
+	protected final StreamingLineStore streamingLineStore;
+	protected final File directory;
+	protected final long sorterMemory;
+	//the property columns without duplicates
+	protected final int[] propertyColumns;
+	//the lines that have not reached their node yet, ordered for the current depth
+	protected ExternalSorter<LineRecord> stepSorter;
+	//the lines that reached their node
+	protected ExternalSorter<LineRecord> lineSorter;
+	//the number of lines added so far, the lines are ordered by it
+	protected int lineCount;
+	protected File propertyFile;
+	protected ExternalSorter<NodeRecord> renderSorter;
+
+	//the lines of a node in the order in which they reached it
+	protected static final Comparator<LineRecord> linePathOrder = new Comparator<LineRecord>() {
+		@Override
+		public int compare(LineRecord line1, LineRecord line2) {
+			int comparison = comparePaths(line1.path, line2.path);
+			return comparison != 0 ? comparison : compareArrivals(line1, line2);
+		}
+	};
+
+	//the lines of a node grouped by their next name, the lowest level and then the first line of a group create the child
+	protected static final Comparator<LineRecord> stepOrder = new Comparator<LineRecord>() {
+		@Override
+		public int compare(LineRecord line1, LineRecord line2) {
+			int comparison = comparePaths(line1.path, line2.path);
+			if(comparison == 0){
+				comparison = line1.names[0].compareTo(line2.names[0]);
+			}
+			if(comparison == 0){
+				comparison = Integer.compare(line1.levels[0], line2.levels[0]);
+			}
+			return comparison != 0 ? comparison : compareArrivals(line1, line2);
+		}
+	};
+
+	protected static final Comparator<NodeRecord> pathOrder = new Comparator<NodeRecord>() {
+		@Override
+		public int compare(NodeRecord node1, NodeRecord node2) {
+			return comparePaths(node1.path, node2.path);
+		}
+	};
+
+	//the order of the ids: level by level, the parents in tree order and their children in order
+	protected static final Comparator<NodeRecord> levelOrder = new Comparator<NodeRecord>() {
+		@Override
+		public int compare(NodeRecord node1, NodeRecord node2) {
+			int comparison = Integer.compare(node1.level, node2.level);
+			return comparison != 0 ? comparison : compareChildren(node1.rankPath, node2.rankPath);
+		}
+	};
+
+	//depth first in tree order
+	protected static final Comparator<NodeRecord> treeOrder = new Comparator<NodeRecord>() {
+		@Override
+		public int compare(NodeRecord node1, NodeRecord node2) {
+			return compareRanks(node1.rankPath, node2.rankPath);
+		}
+	};
+
+	//the order of the output, the children of the root node first and then the children of the parents of each level in tree order
+	protected static final Comparator<NodeRecord> outputOrder = new Comparator<NodeRecord>() {
+		@Override
+		public int compare(NodeRecord node1, NodeRecord node2) {
+			int comparison = Integer.compare(node1.parentLevel, node2.parentLevel);
+			return comparison != 0 ? comparison : compareChildren(node1.rankPath, node2.rankPath);
+		}
+	};
+
+	//the children of a node in the order of creation in the TreeBuilder
+	protected static final Comparator<NodeRecord> insertionOrder = new Comparator<NodeRecord>() {
+		@Override
+		public int compare(NodeRecord node1, NodeRecord node2) {
+			int comparison = Integer.compare(node1.level, node2.level);
+			return comparison != 0 ? comparison : compareRanks(node1.creationKey, node2.creationKey);
+		}
+	};
+
+	//a line with the names of its hierarchy columns that it has not left a node with yet and its property values
+	protected static class LineRecord {
+		protected String[] names;
+		protected int[] levels;
+		//the names of the nodes the line reached so far from the top level node on
+		protected String[] path;
+		//the pass of the TreeBuilder in which the line reached each node of its path
+		protected int[] arrivals;
+		protected int line;
+		protected int lineNumber;
+		//the number of columns up to the last property column the line has
+		protected int columnCount;
+		//by the position of the property column
+		protected String[] propertyValues;
+	}
+
+	//a node in the different passes, only the fields of the current pass are set
+	protected static class NodeRecord {
+		//the names from the top level node to this node
+		protected String[] path;
+		//the positions in the tree order of the children from the top level node to this node, starting with 1
+		protected int[] rankPath;
+		protected String name;
+		protected String id;
+		protected int level;
+		//the position in the order of the lines of the parent of the line that created the node, see arrivalKey()
+		protected int[] creationKey;
+		protected int parentLevel;
+		protected String parentId;
+		//in tree order
+		protected String[] childNames;
+		protected String[] childIds;
+		//the own lines of the node in the property file
+		protected long propertyOffset;
+		protected int propertyLength;
+		protected int lineCount;
+	}
+
+	//a node of the current path while the lines are merged or the nodes are followed in tree order
+	protected static class OpenNode {
+		protected final NodeRecord record;
+		protected final List<NodeRecord> children = new ArrayList<NodeRecord>();
+
+		protected OpenNode(NodeRecord record) {
+			this.record = record;
+		}
+	}
+
+	public ExternalTreeBuilder(HierarchyGenerator hierarchyGenerator) {
+		super(hierarchyGenerator);
+		this.streamingLineStore = (StreamingLineStore)lineStore;
+		HierarchySettings settings = hierarchyGenerator.settings;
+		this.directory = settings.externalBuildDirectory.length() > 0 ? new File(settings.externalBuildDirectory) : null;
+		//up to four sorters are filled or read at the same time
+		this.sorterMemory = settings.externalBuildMemory/4;
+		//the lines and the nodes are not kept
+		namePool = null;
+		int[] columns = new int[settings.propertyColumns.length];
+		int columnCount = 0;
+		for(int propertyColumn:settings.propertyColumns){
+			boolean duplicate = false;
+			for(int index = 0; index < columnCount; index++){
+				duplicate = duplicate || columns[index] == propertyColumn;
+			}
+			if(!duplicate){
+				columns[columnCount++] = propertyColumn;
+			}
+		}
+		propertyColumns = Arrays.copyOf(columns, columnCount);
+		stepSorter = new ExternalSorter<LineRecord>(stepOrder, new LineCodec(), sorterMemory, directory, "hierarchy-lines");
+		lineSorter = new ExternalSorter<LineRecord>(linePathOrder, new LineCodec(), sorterMemory, directory, "hierarchy-lines");
+	}
+
+	@Override
+	public void addLine(InputLine inputLine) throws IOException{
+		//the line store counts the line and finds the missing columns, the line is only kept by the sorter
+		int line = lineStore.add(inputLine);
+		LineRecord lineRecord = new LineRecord();
+		String[] names = new String[hierarchyColumns.length];
+		int[] levels = new int[hierarchyColumns.length];
+		int depth = 0;
+		for(int level = 0; level < hierarchyColumns.length; level++){
+			int column = hierarchyColumns[level];
+			if(lineStore.hasColumn(line, column)){
+				String conceptName = lineStore.getValue(line, column);
+				if(!conceptName.equals("")){
+					names[depth] = conceptName;
+					levels[depth] = level;
+					depth++;
+				}
+			}else{
+				warnMissingColumn(line, column);
+			}
+		}
+		lineRecord.names = Arrays.copyOf(names, depth);
+		lineRecord.levels = Arrays.copyOf(levels, depth);
+		lineRecord.path = new String[0];
+		lineRecord.arrivals = new int[0];
+		lineRecord.line = lineCount++;
+		lineRecord.lineNumber = inputLine.getLineNumber();
+		for(int propertyColumn:propertyColumns){
+			if(lineStore.hasColumn(line, propertyColumn)){
+				lineRecord.columnCount = Math.max(lineRecord.columnCount, propertyColumn);
+			}
+		}
+		lineRecord.propertyValues = new String[propertyColumns.length];
+		for(int index = 0; index < propertyColumns.length; index++){
+			if(lineRecord.columnCount >= propertyColumns[index]){
+				lineRecord.propertyValues[index] = lineStore.getValue(line, propertyColumns[index]);
+			}
+		}
+		streamingLineStore.release(line);
+		//the lines without a name belong to the root node, they are not written
+		if(depth > 0){
+			stepSorter.add(lineRecord);
+		}
+	}
+
+	//the passes 1 to 5, afterwards the nodes can be written
+	public void sortNodes() throws IOException{
+		ExternalSorter<NodeRecord> nodeSorter = new ExternalSorter<NodeRecord>(pathOrder, new NodeCodec(), sorterMemory, directory, "hierarchy-nodes");
+		try{
+			while(stepSorter.size() > 0){
+				ExternalSorter<LineRecord> nextStepSorter = new ExternalSorter<LineRecord>(stepOrder, new LineCodec(), sorterMemory, directory, "hierarchy-lines");
+				ExternalSorter<LineRecord> currentStepSorter = stepSorter;
+				stepSorter = nextStepSorter;
+				createChildNodes(currentStepSorter, nodeSorter);
+			}
+			stepSorter = null;
+			ExternalSorter<NodeRecord> pathSorter = new ExternalSorter<NodeRecord>(pathOrder, new NodeCodec(), sorterMemory, directory, "hierarchy-nodes");
+			try{
+				mergeLines(nodeSorter, pathSorter);
+				ExternalSorter<NodeRecord> levelSorter = new ExternalSorter<NodeRecord>(levelOrder, new NodeCodec(), sorterMemory, directory, "hierarchy-nodes");
+				try{
+					rankNodes(pathSorter, levelSorter);
+					hierarchyGenerator.startPhase(RunReport.idPhase);
+					ExternalSorter<NodeRecord> treeSorter = new ExternalSorter<NodeRecord>(treeOrder, new NodeCodec(), sorterMemory, directory, "hierarchy-nodes");
+					try{
+						assignIds(levelSorter, treeSorter);
+						renderSorter = new ExternalSorter<NodeRecord>(outputOrder, new NodeCodec(), sorterMemory, directory, "hierarchy-nodes");
+						linkNodes(treeSorter, renderSorter);
+					}finally{
+						treeSorter.delete();
+					}
+				}finally{
+					levelSorter.delete();
+				}
+			}finally{
+				pathSorter.delete();
+			}
+		}finally{
+			nodeSorter.delete();
+		}
+	}
+
+	//pass 1 for one depth: every line leaves its node with its next name, the lines with more names go on to the next depth
+	protected void createChildNodes(ExternalSorter<LineRecord> currentStepSorter, ExternalSorter<NodeRecord> nodeSorter) throws IOException{
+		ExternalSorter<LineRecord>.Reader lines = currentStepSorter.sorted();
+		try{
+			NodeRecord childNode = null;
+			String[] parentPath = null;
+			LineRecord line = lines.next();
+			while(line != null){
+				if(childNode == null || comparePaths(parentPath, line.path) != 0 || !childNode.name.equals(line.names[0])){
+					//the first line of the lowest level creates the child
+					parentPath = line.path;
+					childNode = new NodeRecord();
+					childNode.path = Arrays.copyOf(line.path, line.path.length+1);
+					childNode.path[line.path.length] = line.names[0];
+					childNode.name = line.names[0];
+					childNode.level = line.levels[0];
+					childNode.creationKey = arrivalKey(line);
+					nodeSorter.add(childNode);
+				}
+				int level = line.levels[0];
+				line.path = childNode.path;
+				line.arrivals = Arrays.copyOf(line.arrivals, line.arrivals.length+1);
+				//the line reached the child in the pass of the column of the name
+				line.arrivals[line.arrivals.length-1] = level-1;
+				if(childNode.level == level){
+					line.names = Arrays.copyOfRange(line.names, 1, line.names.length);
+					line.levels = Arrays.copyOfRange(line.levels, 1, line.levels.length);
+				}
+				//otherwise the child existed before the pass of the name, the line goes on with the same name below it
+				if(line.names.length > 0){
+					stepSorter.add(line);
+				}else{
+					lineSorter.add(line);
+				}
+				line = lines.next();
+			}
+		}finally{
+			lines.close();
+		}
+	}
+
+	//pass 2: writes the property values of every node to the property file and ranks the children of every node
+	protected void mergeLines(ExternalSorter<NodeRecord> nodeSorter, ExternalSorter<NodeRecord> pathSorter) throws IOException{
+		propertyFile = File.createTempFile("hierarchy-properties", ".tmp", directory);
+		CountingOutputStream propertyCount = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(propertyFile), 65536));
+		DataOutputStream propertyOut = new DataOutputStream(propertyCount);
+		ExternalSorter<NodeRecord>.Reader nodes = nodeSorter.sorted();
+		ExternalSorter<LineRecord>.Reader lines = null;
+		try{
+			lines = lineSorter.sorted();
+			//the path of the current node, the root node first
+			OpenNode[] openNodes = new OpenNode[hierarchyColumns.length+1];
+			openNodes[0] = new OpenNode(new NodeRecord());
+			int openNodeCount = 1;
+			LineRecord line = lines.next();
+			NodeRecord node = nodes.next();
+			while(node != null){
+				int depth = node.path.length;
+				closeNodes(openNodes, openNodeCount, depth, pathSorter);
+				openNodes[depth] = new OpenNode(node);
+				openNodeCount = depth+1;
+				//every line has reached a node, the lines of a node follow each other in the property file
+				while(line != null && comparePaths(line.path, node.path) == 0){
+					if(node.lineCount == 0){
+						node.propertyOffset = propertyCount.getCount();
+					}
+					writeProperties(propertyOut, line);
+					node.lineCount++;
+					node.propertyLength = (int)(propertyCount.getCount()-node.propertyOffset);
+					line = lines.next();
+				}
+				node = nodes.next();
+			}
+			closeNodes(openNodes, openNodeCount, 1, pathSorter);
+			rankChildren(openNodes[0], pathSorter);
+		}finally{
+			if(lines != null){
+				lines.close();
+			}
+			nodes.close();
+			lineSorter = null;
+			propertyOut.close();
+		}
+	}
+
+	protected void writeProperties(DataOutputStream out, LineRecord line) throws IOException{
+		out.writeInt(line.lineNumber);
+		out.writeInt(line.columnCount);
+		for(int index = 0; index < propertyColumns.length; index++){
+			if(line.columnCount >= propertyColumns[index]){
+				ExternalSorter.writeString(out, line.propertyValues[index]);
+			}
+		}
+	}
+
+	//closes the open nodes from the given depth on, the deepest first, their children are complete
+	protected void closeNodes(OpenNode[] openNodes, int openNodeCount, int depth, ExternalSorter<NodeRecord> pathSorter) throws IOException{
+		for(int index = openNodeCount-1; index >= depth; index--){
+			rankChildren(openNodes[index], pathSorter);
+			openNodes[index-1].children.add(openNodes[index].record);
+			openNodes[index] = null;
+		}
+	}
+
+	protected void rankChildren(OpenNode openNode, ExternalSorter<NodeRecord> pathSorter) throws IOException{
+		//the sort is stable, but the creation keys are different anyway
+		Collections.sort(openNode.children, insertionOrder);
+		for(int childIndex = 0; childIndex < openNode.children.size(); childIndex++){
+			NodeRecord child = openNode.children.get(childIndex);
+			child.rankPath = new int[]{childIndex+1};
+			child.creationKey = null;
+			pathSorter.add(child);
+		}
+		openNode.children.clear();
+	}
+
+	//pass 3: the rank path of every node from its ancestors, a parent comes before its children in the path order
+	protected void rankNodes(ExternalSorter<NodeRecord> pathSorter, ExternalSorter<NodeRecord> levelSorter) throws IOException{
+		ExternalSorter<NodeRecord>.Reader nodes = pathSorter.sorted();
+		try{
+			int[] ranks = new int[hierarchyColumns.length];
+			NodeRecord node = nodes.next();
+			while(node != null){
+				int depth = node.path.length;
+				ranks[depth-1] = node.rankPath[0];
+				node.rankPath = Arrays.copyOf(ranks, depth);
+				node.path = null;
+				levelSorter.add(node);
+				node = nodes.next();
+			}
+		}finally{
+			nodes.close();
+		}
+	}
+
+	//pass 4: the ids level by level, like in TreeBuilder.build()
+	protected void assignIds(ExternalSorter<NodeRecord> levelSorter, ExternalSorter<NodeRecord> treeSorter) throws IOException{
+		ExternalSorter<NodeRecord>.Reader nodes = levelSorter.sorted();
+		try{
+			NodeRecord node = nodes.next();
+			while(node != null){
+				if(hierarchyGenerator.settings.idType == IdType.ORDERED_NUMERIC){
+					//the ordered ids are the rank paths
+					StringBuilder id = new StringBuilder();
+					for(int rank:node.rankPath){
+						if(id.length() > 0){
+							id.append('.');
+						}
+						id.append(rank);
+					}
+					node.id = id.toString();
+				}else{
+					node.id = hierarchyGenerator.generateNewID(node.name, null, node.rankPath[node.rankPath.length-1]);
+				}
+				hierarchyGenerator.nodeCount++;
+				if(hierarchyGenerator.runReport != null){
+					hierarchyGenerator.runReport.countNode(node.level);
+				}
+				treeSorter.add(node);
+				node = nodes.next();
+			}
+		}finally{
+			nodes.close();
+		}
+	}
+
+	//pass 5: the ids of the parent and of the children of every node, the children of a node follow it in the tree order
+	protected void linkNodes(ExternalSorter<NodeRecord> treeSorter, ExternalSorter<NodeRecord> renderSorter) throws IOException{
+		ExternalSorter<NodeRecord>.Reader nodes = treeSorter.sorted();
+		try{
+			OpenNode[] openNodes = new OpenNode[hierarchyColumns.length+1];
+			NodeRecord rootRecord = new NodeRecord();
+			rootRecord.id = rootNode.id;
+			rootRecord.level = rootNode.level;
+			openNodes[0] = new OpenNode(rootRecord);
+			int openNodeCount = 1;
+			NodeRecord node = nodes.next();
+			while(node != null){
+				int depth = node.rankPath.length;
+				for(int index = openNodeCount-1; index >= depth; index--){
+					linkChildren(openNodes[index], renderSorter);
+				}
+				NodeRecord parent = openNodes[depth-1].record;
+				node.parentId = parent.id;
+				node.parentLevel = parent.level;
+				openNodes[depth-1].children.add(node);
+				openNodes[depth] = new OpenNode(node);
+				openNodeCount = depth+1;
+				node = nodes.next();
+			}
+			for(int index = openNodeCount-1; index >= 1; index--){
+				linkChildren(openNodes[index], renderSorter);
+			}
+		}finally{
+			nodes.close();
+		}
+	}
+
+	//the names and ids of the children for the narrower references, the NodeRenderer sorts them by name
+	protected void linkChildren(OpenNode openNode, ExternalSorter<NodeRecord> renderSorter) throws IOException{
+		NodeRecord node = openNode.record;
+		List<NodeRecord> children = openNode.children;
+		node.childNames = new String[children.size()];
+		node.childIds = new String[children.size()];
+		for(int childIndex = 0; childIndex < children.size(); childIndex++){
+			node.childNames[childIndex] = children.get(childIndex).name;
+			node.childIds[childIndex] = children.get(childIndex).id;
+		}
+		children.clear();
+		renderSorter.add(node);
+	}
+
+	//pass 6: renders the nodes in the order of the HierarchyWriter
+	public void writeNodes(HierarchyWriter hierarchyWriter, Writer out) throws IOException{
+		NodeRenderer nodeRenderer = new NodeRenderer(hierarchyGenerator);
+		ExternalSorter<NodeRecord>.Reader nodes = renderSorter.sorted();
+		RandomAccessFile properties = new RandomAccessFile(propertyFile, "r");
+		try{
+			byte[] propertyBytes = new byte[1024];
+			NodeRecord record = nodes.next();
+			while(record != null){
+				HierarchyNode node = new HierarchyNode(record.name, record.id, hierarchyColumns[record.level], record.level);
+				node.childNodes = new HierarchyNode[record.childIds.length];
+				for(int childIndex = 0; childIndex < record.childIds.length; childIndex++){
+					node.childNodes[childIndex] = new HierarchyNode(record.childNames[childIndex], record.childIds[childIndex], 0, record.level+1);
+				}
+				node.childNodeCount = record.childIds.length;
+				HierarchyNode parentNode = new HierarchyNode(null, record.parentId, 0, record.parentLevel);
+				if(record.lineCount > 0){
+					if(record.propertyLength > propertyBytes.length){
+						propertyBytes = new byte[Math.max(record.propertyLength, propertyBytes.length*2)];
+					}
+					properties.seek(record.propertyOffset);
+					properties.readFully(propertyBytes, 0, record.propertyLength);
+					DataInputStream in = new DataInputStream(new ByteArrayInputStream(propertyBytes, 0, record.propertyLength));
+					for(int lineIndex = 0; lineIndex < record.lineCount; lineIndex++){
+						node.addLine(streamingLineStore.restore(readLine(in)));
+					}
+				}
+				hierarchyWriter.writeElement(nodeRenderer, parentNode, node, record.rankPath[record.rankPath.length-1]-1, out);
+				for(int lineIndex = 0; lineIndex < node.getLineCount(); lineIndex++){
+					streamingLineStore.release(node.getLine(lineIndex));
+				}
+				record = nodes.next();
+			}
+		}finally{
+			properties.close();
+			nodes.close();
+			renderSorter = null;
+		}
+	}
+
+	protected InputLine readLine(DataInputStream in) throws IOException{
+		int lineNumber = in.readInt();
+		//the other columns are not needed for the output
+		String[] values = new String[in.readInt()];
+		Arrays.fill(values, "");
+		for(int propertyColumn:propertyColumns){
+			if(values.length >= propertyColumn){
+				values[propertyColumn-1] = ExternalSorter.readString(in);
+			}
+		}
+		return new InputLine(lineNumber, values);
+	}
+
+	//deletes the temporary files, also if the build failed
+	public void close(){
+		if(stepSorter != null){
+			stepSorter.delete();
+			stepSorter = null;
+		}
+		if(lineSorter != null){
+			lineSorter.delete();
+			lineSorter = null;
+		}
+		if(renderSorter != null){
+			renderSorter.delete();
+			renderSorter = null;
+		}
+		if(propertyFile != null){
+			propertyFile.delete();
+			propertyFile = null;
+		}
+	}
+
+	protected static int comparePaths(String[] path1, String[] path2){
+		int length = Math.min(path1.length, path2.length);
+		for(int index = 0; index < length; index++){
+			int comparison = path1[index].compareTo(path2[index]);
+			if(comparison != 0){
+				return comparison;
+			}
+		}
+		return Integer.compare(path1.length, path2.length);
+	}
+
+	//the order of two lines of the same node: by the pass in which they reached the node, then by their order in the parent node
+	protected static int compareArrivals(LineRecord line1, LineRecord line2){
+		for(int index = line1.arrivals.length-1; index >= 0; index--){
+			int comparison = Integer.compare(line1.arrivals[index], line2.arrivals[index]);
+			if(comparison != 0){
+				return comparison;
+			}
+		}
+		return Integer.compare(line1.line, line2.line);
+	}
+
+	//the order of compareArrivals() as one key
+	protected static int[] arrivalKey(LineRecord line){
+		int[] key = new int[line.arrivals.length+1];
+		for(int index = 0; index < line.arrivals.length; index++){
+			key[index] = line.arrivals[line.arrivals.length-1-index];
+		}
+		key[line.arrivals.length] = line.line;
+		return key;
+	}
+
+	protected static int compareRanks(int[] rankPath1, int[] rankPath2){
+		return compareRanks(rankPath1, rankPath1.length, rankPath2, rankPath2.length);
+	}
+
+	protected static int compareRanks(int[] rankPath1, int length1, int[] rankPath2, int length2){
+		int length = Math.min(length1, length2);
+		for(int index = 0; index < length; index++){
+			int comparison = Integer.compare(rankPath1[index], rankPath2[index]);
+			if(comparison != 0){
+				return comparison;
+			}
+		}
+		return Integer.compare(length1, length2);
+	}
+
+	//the children of a parent follow each other, also if one parent is a descendant of another parent with the same level
+	protected static int compareChildren(int[] rankPath1, int[] rankPath2){
+		int comparison = compareRanks(rankPath1, rankPath1.length-1, rankPath2, rankPath2.length-1);
+		return comparison != 0 ? comparison : Integer.compare(rankPath1[rankPath1.length-1], rankPath2[rankPath2.length-1]);
+	}
+
+	protected class LineCodec implements ExternalSorter.Codec<LineRecord> {
+		@Override
+		public void write(DataOutputStream out, LineRecord line) throws IOException {
+			out.writeInt(line.line);
+			out.writeInt(line.lineNumber);
+			out.writeInt(line.names.length);
+			for(int index = 0; index < line.names.length; index++){
+				ExternalSorter.writeString(out, line.names[index]);
+				out.writeInt(line.levels[index]);
+			}
+			out.writeInt(line.path.length);
+			for(int index = 0; index < line.path.length; index++){
+				ExternalSorter.writeString(out, line.path[index]);
+				out.writeInt(line.arrivals[index]);
+			}
+			out.writeInt(line.columnCount);
+			for(int index = 0; index < propertyColumns.length; index++){
+				if(line.columnCount >= propertyColumns[index]){
+					ExternalSorter.writeString(out, line.propertyValues[index]);
+				}
+			}
+		}
+
+		@Override
+		public LineRecord read(DataInputStream in) throws IOException {
+			LineRecord line = new LineRecord();
+			line.line = in.readInt();
+			line.lineNumber = in.readInt();
+			int depth = in.readInt();
+			line.names = new String[depth];
+			line.levels = new int[depth];
+			for(int index = 0; index < depth; index++){
+				line.names[index] = ExternalSorter.readString(in);
+				line.levels[index] = in.readInt();
+			}
+			int pathLength = in.readInt();
+			line.path = new String[pathLength];
+			line.arrivals = new int[pathLength];
+			for(int index = 0; index < pathLength; index++){
+				line.path[index] = ExternalSorter.readString(in);
+				line.arrivals[index] = in.readInt();
+			}
+			line.columnCount = in.readInt();
+			line.propertyValues = new String[propertyColumns.length];
+			for(int index = 0; index < propertyColumns.length; index++){
+				if(line.columnCount >= propertyColumns[index]){
+					line.propertyValues[index] = ExternalSorter.readString(in);
+				}
+			}
+			return line;
+		}
+
+		@Override
+		public long estimateBytes(LineRecord line) {
+			long bytes = 64+16+4*line.levels.length+16+8*line.names.length+16+4*line.arrivals.length+16+8*line.path.length+16+8*line.propertyValues.length;
+			for(String name:line.names){
+				bytes += ExternalSorter.estimateBytes(name);
+			}
+			for(String name:line.path){
+				bytes += ExternalSorter.estimateBytes(name);
+			}
+			for(String value:line.propertyValues){
+				bytes += ExternalSorter.estimateBytes(value);
+			}
+			return bytes;
+		}
+	}
+
+	//writes every field, the fields that are not set are null or 0
+	protected static class NodeCodec implements ExternalSorter.Codec<NodeRecord> {
+		@Override
+		public void write(DataOutputStream out, NodeRecord node) throws IOException {
+			out.writeInt(node.level);
+			writeStrings(out, node.path);
+			writeInts(out, node.rankPath);
+			ExternalSorter.writeString(out, node.name);
+			ExternalSorter.writeString(out, node.id);
+			writeInts(out, node.creationKey);
+			out.writeInt(node.parentLevel);
+			ExternalSorter.writeString(out, node.parentId);
+			writeStrings(out, node.childNames);
+			writeStrings(out, node.childIds);
+			out.writeLong(node.propertyOffset);
+			out.writeInt(node.propertyLength);
+			out.writeInt(node.lineCount);
+		}
+
+		@Override
+		public NodeRecord read(DataInputStream in) throws IOException {
+			NodeRecord node = new NodeRecord();
+			node.level = in.readInt();
+			node.path = readStrings(in);
+			node.rankPath = readInts(in);
+			node.name = ExternalSorter.readString(in);
+			node.id = ExternalSorter.readString(in);
+			node.creationKey = readInts(in);
+			node.parentLevel = in.readInt();
+			node.parentId = ExternalSorter.readString(in);
+			node.childNames = readStrings(in);
+			node.childIds = readStrings(in);
+			node.propertyOffset = in.readLong();
+			node.propertyLength = in.readInt();
+			node.lineCount = in.readInt();
+			return node;
+		}
+
+		@Override
+		public long estimateBytes(NodeRecord node) {
+			long bytes = 96+ExternalSorter.estimateBytes(node.name)+ExternalSorter.estimateBytes(node.id)+ExternalSorter.estimateBytes(node.parentId);
+			if(node.path != null){
+				bytes += 16+8*node.path.length;
+				for(String name:node.path){
+					bytes += ExternalSorter.estimateBytes(name);
+				}
+			}
+			if(node.rankPath != null){
+				bytes += 16+4*node.rankPath.length;
+			}
+			if(node.creationKey != null){
+				bytes += 16+4*node.creationKey.length;
+			}
+			if(node.childIds != null){
+				bytes += 32+16*node.childIds.length;
+				for(int childIndex = 0; childIndex < node.childIds.length; childIndex++){
+					bytes += ExternalSorter.estimateBytes(node.childNames[childIndex])+ExternalSorter.estimateBytes(node.childIds[childIndex]);
+				}
+			}
+			return bytes;
+		}
+
+		protected static void writeStrings(DataOutputStream out, String[] values) throws IOException{
+			if(values == null){
+				out.writeInt(-1);
+				return;
+			}
+			out.writeInt(values.length);
+			for(String value:values){
+				ExternalSorter.writeString(out, value);
+			}
+		}
+
+		protected static void writeInts(DataOutputStream out, int[] values) throws IOException{
+			if(values == null){
+				out.writeInt(-1);
+				return;
+			}
+			out.writeInt(values.length);
+			for(int value:values){
+				out.writeInt(value);
+			}
+		}
+
+		protected static int[] readInts(DataInputStream in) throws IOException{
+			int count = in.readInt();
+			if(count < 0){
+				return null;
+			}
+			int[] values = new int[count];
+			for(int index = 0; index < count; index++){
+				values[index] = in.readInt();
+			}
+			return values;
+		}
+
+		protected static String[] readStrings(DataInputStream in) throws IOException{
+			int count = in.readInt();
+			if(count < 0){
+				return null;
+			}
+			String[] values = new String[count];
+			for(int index = 0; index < count; index++){
+				values[index] = ExternalSorter.readString(in);
+			}
+			return values;
+		}
+	}
+}
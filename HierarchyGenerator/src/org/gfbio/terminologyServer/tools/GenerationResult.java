@@ -0,0 +1,23 @@
+package org.gfbio.terminologyServer.tools;
+
+/**
+ * The numbers of a finished run of the HierarchyGenerator.
+ */
+public class GenerationResult {
+	//lines of the input without the column names
+	public final int lineCount;
+	//nodes of the hierarchy without the root node
+	public final int nodeCount;
+	public final long durationMillis;
+
+	public GenerationResult(int lineCount, int nodeCount, long durationMillis) {
+		this.lineCount = lineCount;
+		this.nodeCount = nodeCount;
+		this.durationMillis = durationMillis;
+	}
+
+	@Override
+	public String toString() {
+		return lineCount+" lines, "+nodeCount+" nodes, "+durationMillis+" ms";
+	}
+}
@@ -1,23 +1,40 @@
 package org.gfbio.terminologyServer.tools;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.util.LinkedList;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
-import org.apache.commons.lang3.ArrayUtils;
+import org.gfbio.terminologyServer.tools.util.BackgroundOutputStream;
+import org.gfbio.terminologyServer.tools.util.CountingOutputStream;
 import org.gfbio.terminologyServer.tools.util.SettingsLoader;
 
-import au.com.bytecode.opencsv.CSVReader;
-
+/**
+ * Generates a hierarchy from the settings, either from the input and output files of the settings or from streams.
+ * A generator runs one job at a time, every call of generate() starts with new job state (line store, node count and ids),
+ * so a generator can be reused for the same settings. Different jobs can run concurrently with their own generators.
+ */
 public class HierarchyGenerator {
 	public static final String defaultSettingsFileLocation = "HierarchyGenerator.settings";
 	public static final String defaultSeparatorCharacter = ",";
@@ -26,6 +43,18 @@ public class HierarchyGenerator {
 	public static final String defaultOutputFileLocation = "output.xml";
 	public static final String defaultIdType = "nameBased";
 	public static final String defaultNumericStartId = "1";
+	public static final String defaultOutputBufferSize = "65536";
+	public static final String defaultRenderThreads = "1";
+	public static final String defaultRenderChunkSize = "1000";
+	public static final String defaultBuildThreads = "1";
+	public static final String defaultLineStorage = "rows";
+	public static final String defaultProfileThreads = "1";
+	public static final String defaultDiagnosticsExamples = "10";
+	public static final String defaultCompression = "auto";
+	public static final String defaultCsvParser = "channel";
+	public static final String defaultReadThreads = "1";
+	public static final String defaultReadChunkSize = "16777216";
+	public static final String defaultExternalBuildMemory = "268435456";
 	
 	public static final String inputFileKey = "inputFile";
 	public static final String separatorCharacterKey = "separatorCharacter";
@@ -47,312 +76,490 @@ public class HierarchyGenerator {
 	public static final String broaderReferenceTemplateKey = "BroaderReferenceTemplate";
 	public static final String narrowerReferenceTemplateKey = "NarrowerReferenceTemplate";
 	public static final String propertyTemplateKey = "PropertyTemplate";
+	public static final String outputBufferSizeKey = "outputBufferSize";
+	public static final String outputFileChannelKey = "outputFileChannel";
+	public static final String renderThreadsKey = "renderThreads";
+	public static final String renderChunkSizeKey = "renderChunkSize";
+	public static final String buildThreadsKey = "buildThreads";
+	public static final String memoryReportKey = "memoryReport";
+	public static final String lineStorageKey = "lineStorage";
+	public static final String snapshotFileKey = "snapshotFile";
+	public static final String incrementalStateFileKey = "incrementalStateFile";
+	public static final String changeListFileKey = "changeListFile";
+	public static final String reportFileKey = "reportFile";
+	public static final String jmxReportKey = "jmxReport";
+	public static final String diagnosticsExamplesKey = "diagnosticsExamples";
+	public static final String diagnosticsFileKey = "diagnosticsFile";
+	public static final String inputCompressionKey = "inputCompression";
+	public static final String outputCompressionKey = "outputCompression";
+	public static final String csvParserKey = "csvParser";
+	public static final String readThreadsKey = "readThreads";
+	public static final String readChunkSizeKey = "readChunkSize";
+	public static final String pipelineKey = "pipeline";
+	public static final String streamingOutputKey = "streamingOutput";
+	public static final String externalBuildKey = "externalBuild";
+	public static final String externalBuildMemoryKey = "externalBuildMemory";
+	public static final String externalBuildDirectoryKey = "externalBuildDirectory";
+	public static final String outputIndexFileKey = "outputIndexFile";
+	public static final String outputProfilesKey = "outputProfiles";
+	public static final String profileThreadsKey = "profileThreads";
 	
 	public static final String defaultPrefix = "default";
 	public static final String columnPrefix = "column";
 	
 	public static final String rootId = "root";
 	
-	public String[] columnNames = null;
-	public int nodeCount = 0;
-	public int[] hierarchyColumns;
-	public int[] propertyColumns;
+	public static final String batchOption = "-batch";
+	public static final String threadsOption = "-threads";
+	
+	public String[] columnNames;
+	public int nodeCount;
 	public Map<String, String> settingsMap;
+	public HierarchySettings settings;
+	public LineStore lineStore;
+	public MemoryReport memoryReport;
+	public Diagnostics diagnostics;
+	//only set while a job with an incrementalStateFile runs
+	public IncrementalState incrementalState;
+	//only set while a job with a reportFile or jmxReport runs
+	public RunReport runReport;
 	
 	protected int numericIdCounter;
+	protected NameIdAllocator nameIdAllocator;
 	
+	//the constructor of the first versions: loads the settings file (the default settings file if it is null or does not exist)
+	//and generates the hierarchy, problems are printed and stop the program like in main()
+	@Deprecated
 	public HierarchyGenerator(String settingsFileLocation) {
-		
-		settingsMap = SettingsLoader.loadSettings(settingsFileLocation,defaultSettingsFileLocation);
-		
+		this(loadSettingsOrExit(settingsFileLocation));
+		generateOrExit();
+	}
+
+	public HierarchyGenerator(Map<String, String> settingsMap) throws HierarchyGeneratorException {
+		this(new HierarchySettings(settingsMap));
+	}
+	
+	public HierarchyGenerator(HierarchySettings settings) {
+		this.settingsMap = settings.settingsMap;
+		this.settings = settings;
+		startJob();
+	}
+	
+	protected void startJob(){
+		columnNames = null;
+		nodeCount = 0;
+		numericIdCounter = settings.numericStartId;
+		nameIdAllocator = new NameIdAllocator();
+		lineStore = createLineStore();
+		memoryReport = null;
+		incrementalState = null;
+		diagnostics = new Diagnostics(this);
+		if(settings.memoryReport){
+			memoryReport = new MemoryReport(this);
+		}
+	}
+	
+	//reads the input file (or the snapshot of its tree) and writes the output file of the settings, incrementally if there is an incrementalStateFile
+	public GenerationResult generate() throws HierarchyGeneratorException, IOException {
+		long startTime = System.currentTimeMillis();
 		if(!settingsMap.containsKey(inputFileKey)){
-			System.out.println("Settings file does not contain the parameter '"+inputFileKey+"'. Stopping program now ...");
-			System.exit(1);
+			throw new HierarchyGeneratorException("Settings file does not contain the parameter '"+inputFileKey+"'.");
 		}
-				
-		File inputFile = new File(getSetting(inputFileKey));
-		
+		File inputFile = new File(settings.inputFile);
 		if(!inputFile.exists()){
-			System.out.println("Input file '"+inputFile.getName()+"' does not exist. Stopping program now ...");
-			System.exit(1);
-		}
-		
-		char separatorCharacter = getSetting(separatorCharacterKey).charAt(0);
-		char quoteCharacter = getSetting(quoteCharacterKey).charAt(0);
-		
-		//get columns to transform
-		if(!settingsMap.containsKey(hierarchyColumnsKey)){
-			System.out.println("Settings file does not contain the parameter '"+hierarchyColumnsKey+"'. Stopping program now ...");
-			System.exit(1);
-		}
-		String hierarachyColumnsText = settingsMap.get(hierarchyColumnsKey);
-		// check if value is only positive integers, separated by comma; 0 or values with a leading 0 are not allowed 
-		if(!hierarachyColumnsText.matches("^([1-9]\\d*)(,[1-9]\\d*)*$")){
-			System.out.println("Settings parameter '"+hierarchyColumnsKey+"' must be only comma separated integers larger than 0. Instead it is '"+hierarachyColumnsText+"'Stopping program now ...");
-			System.exit(1);
+			throw new HierarchyGeneratorException("Input file '"+inputFile.getName()+"' does not exist.");
 		}
-		
-		//split the hierarachyColumns into single values and convert them to integers
-		String[] separatedHierarchyColumnsText = hierarachyColumnsText.split(",");
-		hierarchyColumns = new int[separatedHierarchyColumnsText.length];
-		for(int hierarchyColumnIndex = 0; hierarchyColumnIndex < separatedHierarchyColumnsText.length; hierarchyColumnIndex++){
-			hierarchyColumns[hierarchyColumnIndex] = Integer.parseInt(separatedHierarchyColumnsText[hierarchyColumnIndex]);
-		}
-		
-		String propertyColumnsText = getSetting(propertyColumnsKey);
-		propertyColumns = new int[0];
-		// check if value is only positive integers, separated by comma; 0 or values with a leading 0 are not allowed 
-		if(!propertyColumnsText.matches("^([1-9]\\d*)(,[1-9]\\d*)*$") && propertyColumnsText.length()>0){
-			System.out.println("Settings parameter '"+propertyColumnsKey+"' must be only comma separated integers larger than 0. Instead it is '"+propertyColumnsText+"'. Property columns are ignored.");
-			propertyColumnsText = "";
-		}else if(propertyColumnsText.length()>0){
-			//split the propertyColumns into single values and convert them to integers
-			String[] separatedPropertyColumnsText = propertyColumnsText.split(",");
-			propertyColumns = new int[separatedPropertyColumnsText.length];
-			for(int propertyColumnIndex = 0; propertyColumnIndex < separatedPropertyColumnsText.length; propertyColumnIndex++){
-				propertyColumns[propertyColumnIndex] = Integer.parseInt(separatedPropertyColumnsText[propertyColumnIndex]);
+		startJob();
+		runReport = createRunReport();
+		try{
+			HierarchyNode rootNode = null;
+			TreeSnapshot treeSnapshot = null;
+			if(settings.snapshotFile.length() > 0){
+				startPhase(RunReport.loadSnapshotPhase);
+				treeSnapshot = new TreeSnapshot(this, new File(settings.snapshotFile), inputFile);
+				rootNode = treeSnapshot.load();
 			}
-		}
-		
-		//check for defaultElementTemplate
-		String defaultElementTemplate = getSetting(HierarchyGenerator.defaultPrefix+HierarchyGenerator.elementTemplateKey);
-		if(defaultElementTemplate.equals("")){
-			System.out.println("Warning: There is no "+HierarchyGenerator.defaultPrefix+HierarchyGenerator.elementTemplateKey+" defined.");
-		}
-		
-		//check for defaultPropertyTemplate, 
-		String defaultPropertyTemplate = getSetting(HierarchyGenerator.defaultPrefix+HierarchyGenerator.propertyTemplateKey);
-		if(defaultPropertyTemplate.equals("")){
-			System.out.println("Warning: There is no "+HierarchyGenerator.defaultPrefix+HierarchyGenerator.propertyTemplateKey+" defined.");
-		}
-		
-		String showBroaderReference = getSetting(HierarchyGenerator.showBroaderReferenceKey);
-		String showNarrowerReference = getSetting(HierarchyGenerator.showNarrowerReferenceKey);
-		//check for defaultBroaderReferenceTemplate
-		if(showBroaderReference.equals("true")|showBroaderReference.equals("1")){
-			String broaderReferenceTemplate = getSetting(HierarchyGenerator.defaultPrefix+HierarchyGenerator.broaderReferenceTemplateKey);
-			if(broaderReferenceTemplate.equals("")){
-				System.out.println("Warning: There is no "+HierarchyGenerator.defaultPrefix+HierarchyGenerator.broaderReferenceTemplateKey+" defined, even though "+HierarchyGenerator.showBroaderReferenceKey+" is set to true.");
+			if(settings.incrementalStateFile.length() > 0){
+				//loaded after the snapshot, a damaged snapshot starts the job again
+				startPhase(RunReport.loadIncrementalStatePhase);
+				File changeListFile = settings.changeListFile.length() > 0 ? new File(settings.changeListFile) : null;
+				incrementalState = new IncrementalState(this, new File(settings.incrementalStateFile), changeListFile);
+				incrementalState.load();
 			}
-		}
-		//check for defaultNarrowerReferenceTemplate
-		if(showNarrowerReference.equals("true")|showNarrowerReference.equals("1")){
-			String narrowerReferenceTemplate = getSetting(HierarchyGenerator.defaultPrefix+HierarchyGenerator.narrowerReferenceTemplateKey);
-			if(narrowerReferenceTemplate.equals("")){
-				System.out.println("Warning: There is no "+HierarchyGenerator.defaultPrefix+HierarchyGenerator.narrowerReferenceTemplateKey+" defined, even though "+HierarchyGenerator.showNarrowerReferenceKey+" is set to true.");
+			if(settings.streamingOutput || settings.externalBuild){
+				//the snapshot, the incremental state and the output profiles can not be set together with streamingOutput or externalBuild, see HierarchySettings
+				InputStream input = openInputFile(inputFile);
+				try{
+					OutputStream output = openOutputFile(settings);
+					try{
+						rootNode = settings.streamingOutput ? streamHierarchy(input, output) : buildHierarchyExternally(input, output);
+					}finally{
+						output.close();
+					}
+				}catch(StreamingTreeBuilder.StreamingInputException e){
+					//the elements written so far are not the hierarchy of the input
+					new File(settings.outputFile).delete();
+					throw new HierarchyGeneratorException(e.getMessage());
+				}finally{
+					input.close();
+				}
+				if(runReport != null){
+					runReport.addBytesWritten(new File(settings.outputFile).length());
+				}
+				return finishJob(rootNode, startTime);
+			}
+			if(rootNode == null){
+				InputStream input = openInputFile(inputFile);
+				try{
+					rootNode = buildTree(input);
+				}finally{
+					input.close();
+				}
+				if(treeSnapshot != null){
+					startPhase(RunReport.saveSnapshotPhase);
+					treeSnapshot.save(rootNode);
+				}
+			}
+			if(incrementalState != null){
+				startPhase(RunReport.comparePhase);
+				incrementalState.compare(rootNode);
 			}
+			startPhase(RunReport.writePhase);
+			writeOutputFiles(rootNode);
+			if(incrementalState != null){
+				startPhase(RunReport.saveIncrementalStatePhase);
+				incrementalState.save(rootNode);
+			}
+			return finishJob(rootNode, startTime);
+		}finally{
+			closeJob();
 		}
-		
-		String filldown = getSetting(filldownKey);
-		
-		String idType = getSetting(idTypeKey);
-		if(idType.equals("numeric")){
-			String numericStartIdString = getSetting(numericStartIdKey);
-
-			if(numericStartIdString.matches("^\\d+$")){
-				numericIdCounter = Integer.parseInt(numericStartIdString);
+	}
+	
+	//reads the UTF-8 encoded input and writes the hierarchy to the output, the streams are not closed and the output profiles are not written
+	public GenerationResult generate(InputStream input, OutputStream output) throws IOException {
+		long startTime = System.currentTimeMillis();
+		startJob();
+		runReport = createRunReport();
+		try{
+			if(settings.streamingOutput || settings.externalBuild){
+				HierarchyNode rootNode;
+				if(runReport != null){
+					CountingOutputStream countingOutput = new CountingOutputStream(output);
+					rootNode = settings.streamingOutput ? streamHierarchy(input, countingOutput) : buildHierarchyExternally(input, countingOutput);
+					runReport.addBytesWritten(countingOutput.getCount());
+				}else{
+					rootNode = settings.streamingOutput ? streamHierarchy(input, output) : buildHierarchyExternally(input, output);
+				}
+				return finishJob(rootNode, startTime);
+			}
+			HierarchyNode rootNode = buildTree(input);
+			startPhase(RunReport.writePhase);
+			if(runReport != null){
+				CountingOutputStream countingOutput = new CountingOutputStream(output);
+				writeHierarchy(rootNode, countingOutput);
+				runReport.addBytesWritten(countingOutput.getCount());
 			}else{
-				numericIdCounter = 0;
-				System.out.println("Settings parameter '"+numericStartIdKey+"' must be a positive integer. Instead it is '"+numericStartIdString+"'. It was now set to 0.");
-				
+				writeHierarchy(rootNode, output);
 			}
-			
+			return finishJob(rootNode, startTime);
+		}finally{
+			closeJob();
 		}
-		
-		HierarchyNode rootNode = null;
+	}
+	
+	protected HierarchyNode buildTree(InputStream input) throws IOException {
+		//read the input line by line and insert every line into the tree right away
+		TreeBuilder treeBuilder = new TreeBuilder(this);
+		InputReader inputReader = new InputReader(this);
+		startPhase(RunReport.readPhase);
+		inputReader.read(input, treeBuilder);
+		startPhase(RunReport.buildPhase);
+		HierarchyNode rootNode;
 		try {
-			CSVReader csvReader = new CSVReader(new InputStreamReader(new FileInputStream(inputFile), "UTF-8"),separatorCharacter,quoteCharacter);
-			LinkedList<String[]> lines = new LinkedList<String[]>();
-			int lineNumber = 0;
-			//read file line by line
-			String[] line = csvReader.readNext();
-			while(line != null){
-				//line number for error output: human readable counting, i.e. first line number is #1
-				lineNumber ++;
-				//line number is first column
-				lines.add(ArrayUtils.addAll(new String[]{Integer.toString(lineNumber)},line));
-				line = csvReader.readNext();
-			}
-			csvReader.close();
-			
-			//determine number of lines and number of columns
-			int lineCount = lines.size();
-			int maxColumnCount = 0;
-			for(int lineIndex = 0; lineIndex < lineCount; lineIndex++){
-				if(lines.get(lineIndex).length>maxColumnCount){
-					maxColumnCount = lines.get(lineIndex).length;
-				}
+			rootNode = treeBuilder.build();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while building the hierarchy.");
+		}
+		if(memoryReport != null){
+			memoryReport.print(rootNode);
+		}
+		return rootNode;
+	}
+	
+	//reads an input that is sorted by the hierarchy columns and writes every element as soon as its subtree is complete
+	protected HierarchyNode streamHierarchy(InputStream input, OutputStream output) throws IOException {
+		HierarchyWriter hierarchyWriter = new HierarchyWriter(this);
+		Writer out = hierarchyWriter.openOutput(output);
+		startPhase(RunReport.streamPhase);
+		hierarchyWriter.writeHeader(out);
+		StreamingTreeBuilder treeBuilder = new StreamingTreeBuilder(this, out);
+		new InputReader(this).read(input, treeBuilder);
+		HierarchyNode rootNode = treeBuilder.finish();
+		hierarchyWriter.writeFooter(out);
+		out.flush();
+		return rootNode;
+	}
+	
+	//builds the hierarchy with sorted runs in temporary files and writes it in the same order and with the same ids as buildTree() and the HierarchyWriter
+	protected HierarchyNode buildHierarchyExternally(InputStream input, OutputStream output) throws IOException {
+		ExternalTreeBuilder treeBuilder = new ExternalTreeBuilder(this);
+		HierarchyWriter hierarchyWriter = new HierarchyWriter(this);
+		try{
+			startPhase(RunReport.readPhase);
+			new InputReader(this).read(input, treeBuilder);
+			startPhase(RunReport.buildPhase);
+			treeBuilder.sortNodes();
+			Writer out = hierarchyWriter.openOutput(output);
+			startPhase(RunReport.writePhase);
+			hierarchyWriter.writeHeader(out);
+			treeBuilder.writeNodes(hierarchyWriter, out);
+			hierarchyWriter.writeFooter(out);
+			hierarchyWriter.writeIndex();
+			out.flush();
+			//only the root node is kept
+			return treeBuilder.rootNode;
+		}finally{
+			treeBuilder.close();
+			hierarchyWriter.closeIndex();
+		}
+	}
+	
+	//writes the output file of the settings or, if there are output profiles, the output file of every profile
+	protected void writeOutputFiles(final HierarchyNode rootNode) throws IOException {
+		if(settings.profiles.length == 0){
+			writeOutputFile(rootNode, settings);
+			return;
+		}
+		if(settings.profileThreads == 1){
+			for(HierarchySettings profile:settings.profiles){
+				writeOutputFile(rootNode, profile);
 			}
-			
-			//save first row as column names, if requested
-			String firstRowAsNames = settingsMap.get(firstRowAsColumnNamesKey);
-			if(firstRowAsNames != null && (firstRowAsNames.equals("true")||firstRowAsNames.equals("1"))){
-				columnNames = lines.get(0);
-				lines.remove(0);
-				lineCount--;
+			return;
+		}
+		//the tree and the lines are only read, every profile has its own writer
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(settings.profileThreads, settings.profiles.length));
+		try{
+			List<Future<Void>> outputFiles = new ArrayList<Future<Void>>();
+			for(final HierarchySettings profile:settings.profiles){
+				outputFiles.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						writeOutputFile(rootNode, profile);
+						return null;
+					}
+				}));
 			}
-			
-			//fill down of missing values
-			if(filldown.equals("true")||filldown.equals("1")){
-				for(int fillDownRowIndex = 1; fillDownRowIndex < lineCount; fillDownRowIndex++){
-					int hierarchyColumnIndex = 0;
-					String[] previousLine = lines.get(fillDownRowIndex-1);
-					String[] currentLine = lines.get(fillDownRowIndex);
-					while(currentLine[hierarchyColumns[hierarchyColumnIndex]].length()==0){
-						if(previousLine[hierarchyColumns[hierarchyColumnIndex]].length()>0){
-							currentLine[hierarchyColumns[hierarchyColumnIndex]] = previousLine[hierarchyColumns[hierarchyColumnIndex]];
-						}else{
-							//warning: previous line is empty
-							String columnName = "";
-							if(columnNames != null && columnNames.length > hierarchyColumns[hierarchyColumnIndex]){
-								columnName = " ("+columnNames[hierarchyColumns[hierarchyColumnIndex]]+")";
-							}
-							System.out.println("Error in line "+(currentLine[0])+": could not fill down property in column "+hierarchyColumns[hierarchyColumnIndex]+columnName);
-						}
-						hierarchyColumnIndex++;
+			for(Future<Void> outputFile:outputFiles){
+				try {
+					outputFile.get();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("Interrupted while writing the output profiles.");
+				} catch (ExecutionException e) {
+					if(e.getCause() instanceof IOException){
+						throw (IOException)e.getCause();
+					}else if(e.getCause() instanceof RuntimeException){
+						throw (RuntimeException)e.getCause();
 					}
+					throw new IOException(e.getCause());
 				}
 			}
-			
-			rootNode = new HierarchyNode(rootId, rootId, 0, this);
-			rootNode.setLines(lines);
-			for(int columnIndex = -1; columnIndex < hierarchyColumns.length-1; columnIndex++){
-				rootNode.processChildNodes(hierarchyColumns, columnIndex);
-			}
-			
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+		}finally{
+			executor.shutdownNow();
 		}
-		
-		try {
-			String outputFilePath = getSetting(outputFileKey);
-			File outputFile = new File(outputFilePath);
-			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF8"));
-			
-			//write the header from file
-			String headerFileLink = getSetting(headerFileKey);
-			if(headerFileLink.length()>0){
-				File headerFile = new File(headerFileLink);
-				if(headerFile.exists()){
-					if(headerFile.isFile()){
-						BufferedReader headerReader = new BufferedReader(new InputStreamReader(new FileInputStream(headerFile), "UTF8"));
-						String headerLine = headerReader.readLine();
-						while(headerLine != null){
-							out.write(headerLine+"\n");
-							headerLine = headerReader.readLine();
-						}
-						headerReader.close();
-					}else{
-						System.out.println("Header file: '"+headerFileLink+"' is not a file.");
-					}
-				}else{
-					System.out.println("Header file: '"+headerFileLink+"' does not exist.");
+	}
+	
+	protected void writeOutputFile(HierarchyNode rootNode, HierarchySettings outputSettings) throws IOException {
+		OutputStream output = openOutputFile(outputSettings);
+		try{
+			writeHierarchy(rootNode, outputSettings, output);
+		}finally{
+			output.close();
+		}
+		if(runReport != null){
+			runReport.addBytesWritten(new File(outputSettings.outputFile).length());
+		}
+	}
+	
+	//decompresses the input while it is read
+	protected InputStream openInputFile(File inputFile) throws IOException {
+		InputStream input = new FileInputStream(inputFile);
+		try{
+			switch(settings.inputCompression){
+			case GZIP:
+				return new GZIPInputStream(input, 65536);
+			case ZIP:
+				//the first file in the archive
+				ZipInputStream zipInput = new ZipInputStream(new BufferedInputStream(input, 65536));
+				if(zipInput.getNextEntry() == null){
+					throw new IOException("Input file '"+inputFile.getName()+"' is an empty zip archive.");
 				}
+				return zipInput;
+			default:
+				return input;
 			}
-			out.flush();
-			
-			//print the children of the root node first
-			if(rootNode != null){
-				rootNode.printChildNodes(out,0);
-				//print according to the hierarchy
-				for(int columnIndexToPrint:hierarchyColumns){
-					rootNode.printChildNodes(out,columnIndexToPrint);
+		}catch(IOException e){
+			input.close();
+			throw e;
+		}
+	}
+	
+	//a compressed output is compressed on its own thread while the elements are rendered, with pipeline also an uncompressed output is written on its own thread
+	protected OutputStream openOutputFile(HierarchySettings outputSettings) throws IOException {
+		File outputFile = new File(outputSettings.outputFile);
+		FileOutputStream output = new FileOutputStream(outputFile);
+		OutputStream compressedOutput;
+		try{
+			switch(outputSettings.outputCompression){
+			case GZIP:
+				compressedOutput = new GZIPOutputStream(output, 65536);
+				break;
+			case ZIP:
+				//one file named like the archive without .zip
+				ZipOutputStream zipOutput = new ZipOutputStream(new BufferedOutputStream(output, 65536));
+				String entryName = outputFile.getName();
+				if(entryName.toLowerCase(Locale.ROOT).endsWith(".zip") && entryName.length() > 4){
+					entryName = entryName.substring(0, entryName.length()-4);
 				}
-			}
-			
-			//write the footer from file
-			String footerFileLink = getSetting(footerFileKey);
-			if(footerFileLink.length()>0){
-				File footerFile = new File(footerFileLink);
-				if(footerFile.exists()){
-					if(footerFile.isFile()){
-						BufferedReader footerReader = new BufferedReader(new InputStreamReader(new FileInputStream(footerFile), "UTF8"));
-						String footerLine = footerReader.readLine();
-						while(footerLine != null){
-							out.write(footerLine+"\n");
-							footerLine = footerReader.readLine();
-						}
-						footerReader.close();
-					}else{
-						System.out.println("Footer file: '"+footerFileLink+"' is not a file.");
-					}
-				}else{
-					System.out.println("Footer file: '"+footerFileLink+"' does not exist.");
+				zipOutput.putNextEntry(new ZipEntry(entryName));
+				compressedOutput = zipOutput;
+				break;
+			default:
+				if(outputSettings.pipeline){
+					return new BackgroundOutputStream(output, outputSettings.outputBufferSize, "HierarchyGenerator writing of "+outputFile.getName());
 				}
+				return output;
 			}
-			out.flush();
-			out.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+		}catch(IOException e){
+			output.close();
+			throw e;
+		}
+		return new BackgroundOutputStream(compressedOutput, outputSettings.outputBufferSize, "HierarchyGenerator compression of "+outputFile.getName());
+	}
+	
+	protected void writeHierarchy(HierarchyNode rootNode, OutputStream output) throws IOException {
+		writeHierarchy(rootNode, settings, output);
+	}
+	
+	protected void writeHierarchy(HierarchyNode rootNode, HierarchySettings outputSettings, OutputStream output) throws IOException {
+		HierarchyWriter hierarchyWriter = new HierarchyWriter(this, outputSettings);
+		Writer out = hierarchyWriter.openOutput(output);
+		hierarchyWriter.write(rootNode, out);
+		out.flush();
+	}
+	
+	protected GenerationResult finishJob(HierarchyNode rootNode, long startTime){
+		//the root node is counted as well
+		GenerationResult result = new GenerationResult(lineStore.size(), nodeCount-1, System.currentTimeMillis()-startTime);
+		if(runReport != null){
+			//the nodes of a streamed or externally built tree were counted while their ids were assigned
+			runReport.finish(settings.streamingOutput || settings.externalBuild ? null : rootNode, result);
+		}
+		return result;
+	}
+	
+	protected RunReport createRunReport(){
+		if(settings.reportFile.length() > 0 || settings.jmxReport){
+			return new RunReport(this);
+		}
+		return null;
+	}
+	
+	//prints the summary of the problems and closes the report, also if the job failed
+	protected void closeJob(){
+		diagnostics.finish();
+		if(runReport != null){
+			runReport.close();
+		}
+	}
+	
+	//ends the current phase of the run report
+	protected void startPhase(String phase){
+		if(runReport != null){
+			runReport.startPhase(phase);
 		}
-		
 	}
 
-	public String getSetting(String settingsKey){
-		if(settingsKey == null){
-			return "";
+	protected LineStore createLineStore(){
+		if(settings.streamingOutput || settings.externalBuild){
+			return new StreamingLineStore(settings);
 		}
-		String settingsValue = settingsMap.get(settingsKey);
-		if(settingsValue == null || settingsValue.length() == 0){
-			if(settingsKey.equals(outputFileKey)){
-				return defaultOutputFileLocation;
-			}else if(settingsKey.equals(separatorCharacterKey)){
-				return defaultSeparatorCharacter;
-			}else if(settingsKey.equals(quoteCharacterKey)){
-				return defaultQuoteCharacter;
-			}else if(settingsKey.equals(filldownKey)){
-				return defaultFilldown;
-			}else if(settingsKey.equals(idTypeKey)){
-				return defaultIdType;
-			}else if(settingsKey.equals(numericStartIdKey)){
-				return defaultNumericStartId;
-			}
-			
-			return "";
+		switch(settings.lineStorage){
+		case DICTIONARY:
+			return new DictionaryLineStore(settings, false);
+		case OFF_HEAP_DICTIONARY:
+			return new DictionaryLineStore(settings, true);
+		default:
+			return new RowLineStore(settings);
 		}
-		return settingsValue;
 	}
 
+	public String getColumnName(int column){
+		//the columns are numbered as entered by the user with the first column having the index 1!
+		if(columnNames != null && columnNames.length >= column){
+			return columnNames[column-1];
+		}
+		return null;
+	}
+
+	public String getSetting(String settingsKey){
+		return settings.getSetting(settingsKey);
+	}
+
+	//HierarchyGenerator [settings file] or HierarchyGenerator -batch [-threads n] <settings file> ...
 	public static void main(String[] args) {
+		if(args.length > 0 && args[0].equals(batchOption)){
+			int failedJobs = new BatchRunner().run(Arrays.copyOfRange(args, 1, args.length));
+			if(failedJobs > 0){
+				System.exit(1);
+			}
+			return;
+		}
+		
 		String settingsFileLocation = null;
 		if(args.length>0){
 			settingsFileLocation = args[0];
 		}
 
-		new HierarchyGenerator(settingsFileLocation);
-
+		new HierarchyGenerator(loadSettingsOrExit(settingsFileLocation)).generateOrExit();
+	}
+	
+	protected static HierarchySettings loadSettingsOrExit(String settingsFileLocation){
+		try {
+			return new HierarchySettings(SettingsLoader.loadSettings(settingsFileLocation,defaultSettingsFileLocation));
+		} catch (HierarchyGeneratorException e) {
+			System.out.println(e.getMessage()+" Stopping program now ...");
+			System.exit(1);
+		}
+		return null;
+	}
+	
+	protected void generateOrExit(){
+		try {
+			generate();
+		} catch (HierarchyGeneratorException e) {
+			System.out.println(e.getMessage()+" Stopping program now ...");
+			System.exit(1);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
 	}
 
-	protected TreeSet<String> idSet = new TreeSet<String>();
-	public String generateNewID(String conceptName, HierarchyNode parent) {
-		String idType = getSetting(idTypeKey);
-		if(idType.equals("numeric")){
+	public String generateNewID(String conceptName, HierarchyNode parent, int siblingNumber) {
+		switch(settings.idType){
+		case NUMERIC:
 			String returnId = Integer.toString(numericIdCounter);
 			numericIdCounter++;
 			return returnId;
-		}else if(idType.equals("ordered_numeric")){
+		case ORDERED_NUMERIC:
 			String parentNodeName = "";
 			if(parent.getColumnIndex() != 0){
 				parentNodeName = parent.id+".";
 			}
-			int siblingCount = parent.getChildNodes().size()+1;
-			return parentNodeName+siblingCount;
-		}else{
-			if(idSet.contains(conceptName)){
-				int count=2;
-				String replacementId = conceptName+"_"+count;
-				while(idSet.contains(replacementId)){
-					count++;
-					replacementId = conceptName+"_"+count;
-				}
-				idSet.add(replacementId);
-				return replacementId;
-			}else{
-				idSet.add(conceptName);
-				return conceptName;
-			}
+			return parentNodeName+siblingNumber;
+		default:
+			return nameIdAllocator.allocate(conceptName);
 		}
 	}
 
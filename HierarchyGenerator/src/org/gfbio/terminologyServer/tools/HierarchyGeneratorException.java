@@ -0,0 +1,12 @@
+package org.gfbio.terminologyServer.tools;
+
+/**
+ * Thrown if the settings or the input can not be used to generate a hierarchy.
+ */
+public class HierarchyGeneratorException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	public HierarchyGeneratorException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,483 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.gfbio.terminologyServer.tools.template.Template;
+
+/**
+ * The settings of a run, parsed and checked once: the flags are parsed booleans, the id type and the line storage are enums and the
+ * templates are compiled and resolved per column (column specific template, otherwise the default template),
+ * so that they can be looked up by array index while the output is written.
+ * The arrays must not be modified.
+ * Settings that can not be used throw a HierarchyGeneratorException, the others are reported and replaced by their defaults.
+ * 
+ * Every output profile has its own settings: the settings of the run overridden by the settings with the prefix "profile name." (e.g. skos.outputFile).
+ * The settings that change the tree (see treeSettingKeys) are the same for all profiles.
+ */
+public class HierarchySettings {
+	public enum IdType {
+		NAME_BASED, NUMERIC, ORDERED_NUMERIC;
+		
+		public static IdType fromSetting(String idType){
+			if(idType.equals("numeric")){
+				return NUMERIC;
+			}else if(idType.equals("ordered_numeric")){
+				return ORDERED_NUMERIC;
+			}
+			return NAME_BASED;
+		}
+	}
+	
+	public enum LineStorage {
+		ROWS, DICTIONARY, OFF_HEAP_DICTIONARY;
+		
+		public static LineStorage fromSetting(String lineStorage){
+			if(lineStorage.equals("dictionary")){
+				return DICTIONARY;
+			}else if(lineStorage.equals("offHeapDictionary")){
+				return OFF_HEAP_DICTIONARY;
+			}
+			return ROWS;
+		}
+	}
+	
+	public enum CsvParser {
+		CHANNEL, OPENCSV;
+		
+		public static CsvParser fromSetting(String csvParser){
+			if(csvParser.equals("opencsv")){
+				return OPENCSV;
+			}
+			return CHANNEL;
+		}
+	}
+	
+	public enum Compression {
+		AUTO, NONE, GZIP, ZIP;
+		
+		//an unknown compression is not replaced by auto, the file would be read or written with another compression than intended
+		public static Compression fromSetting(String compression, String settingsKey) throws HierarchyGeneratorException {
+			if(compression.equals("auto")){
+				return AUTO;
+			}else if(compression.equals("none")){
+				return NONE;
+			}else if(compression.equals("gzip")){
+				return GZIP;
+			}else if(compression.equals("zip")){
+				return ZIP;
+			}
+			throw new HierarchyGeneratorException("Settings parameter '"+settingsKey+"' must be 'auto', 'none', 'gzip' or 'zip'. Instead it is '"+compression+"'.");
+		}
+		
+		//the compression of the file, by its extension if the setting is auto
+		public Compression forFile(String fileName){
+			if(this != AUTO){
+				return this;
+			}
+			String lowerCaseFileName = fileName.toLowerCase(Locale.ROOT);
+			if(lowerCaseFileName.endsWith(".gz") || lowerCaseFileName.endsWith(".gzip")){
+				return GZIP;
+			}else if(lowerCaseFileName.endsWith(".zip")){
+				return ZIP;
+			}
+			return NONE;
+		}
+	}
+	
+	//settings that can not be set per output profile, all profiles are rendered from the same tree
+	protected static final String[] treeSettingKeys = {HierarchyGenerator.inputFileKey, HierarchyGenerator.separatorCharacterKey,
+		HierarchyGenerator.quoteCharacterKey, HierarchyGenerator.filldownKey, HierarchyGenerator.hierarchyColumnsKey,
+		HierarchyGenerator.propertyColumnsKey, HierarchyGenerator.idTypeKey, HierarchyGenerator.numericStartIdKey,
+		HierarchyGenerator.firstRowAsColumnNamesKey, HierarchyGenerator.buildThreadsKey, HierarchyGenerator.memoryReportKey,
+		HierarchyGenerator.lineStorageKey, HierarchyGenerator.snapshotFileKey, HierarchyGenerator.incrementalStateFileKey,
+		HierarchyGenerator.changeListFileKey, HierarchyGenerator.outputProfilesKey, HierarchyGenerator.profileThreadsKey,
+		HierarchyGenerator.reportFileKey, HierarchyGenerator.jmxReportKey, HierarchyGenerator.diagnosticsExamplesKey,
+		HierarchyGenerator.diagnosticsFileKey, HierarchyGenerator.inputCompressionKey, HierarchyGenerator.csvParserKey,
+		HierarchyGenerator.readThreadsKey, HierarchyGenerator.readChunkSizeKey, HierarchyGenerator.streamingOutputKey,
+		HierarchyGenerator.externalBuildKey, HierarchyGenerator.externalBuildMemoryKey, HierarchyGenerator.externalBuildDirectoryKey};
+	
+	protected final Map<String, String> settingsMap;
+	
+	//null for the settings of the run
+	public final String profileName;
+	//empty if the output file of the run is written
+	public final HierarchySettings[] profiles;
+	public final int profileThreads;
+	
+	public final String inputFile;
+	public final String outputFile;
+	public final String headerFile;
+	public final String footerFile;
+	public final char separatorCharacter;
+	public final char quoteCharacter;
+	public final boolean filldown;
+	public final boolean firstRowAsColumnNames;
+	public final boolean showBroaderReference;
+	public final boolean showNarrowerReference;
+	public final IdType idType;
+	public final int numericStartId;
+	public final int outputBufferSize;
+	public final boolean outputFileChannel;
+	public final int renderThreads;
+	public final int renderChunkSize;
+	public final int buildThreads;
+	public final boolean memoryReport;
+	public final LineStorage lineStorage;
+	public final String snapshotFile;
+	public final String incrementalStateFile;
+	public final String changeListFile;
+	public final String reportFile;
+	public final boolean jmxReport;
+	public final int diagnosticsExamples;
+	public final String diagnosticsFile;
+	//resolved for the input and the output file
+	public final Compression inputCompression;
+	public final Compression outputCompression;
+	public final CsvParser csvParser;
+	public final int readThreads;
+	public final int readChunkSize;
+	public final boolean pipeline;
+	public final boolean streamingOutput;
+	public final boolean externalBuild;
+	public final int externalBuildMemory;
+	public final String externalBuildDirectory;
+	public final String outputIndexFile;
+	public final int[] hierarchyColumns;
+	public final int[] propertyColumns;
+	
+	//resolved templates, indexed by column
+	protected final Template[] elementTemplates;
+	protected final Template[] broaderReferenceTemplates;
+	protected final Template[] narrowerReferenceTemplates;
+	//indexed by element column and property column
+	protected final Template[][] propertyTemplates;
+	protected final boolean[] isPropertyColumn;
+	
+	public HierarchySettings(Map<String, String> settingsMap) throws HierarchyGeneratorException {
+		this(settingsMap, null);
+	}
+	
+	protected HierarchySettings(Map<String, String> settingsMap, String profileName) throws HierarchyGeneratorException {
+		this.settingsMap = settingsMap;
+		this.profileName = profileName;
+		
+		//the input file is only needed if the input is read from a file, see HierarchyGenerator.generate()
+		inputFile = getSetting(HierarchyGenerator.inputFileKey);
+		outputFile = getSetting(HierarchyGenerator.outputFileKey);
+		headerFile = getSetting(HierarchyGenerator.headerFileKey);
+		footerFile = getSetting(HierarchyGenerator.footerFileKey);
+		separatorCharacter = getSetting(HierarchyGenerator.separatorCharacterKey).charAt(0);
+		quoteCharacter = getSetting(HierarchyGenerator.quoteCharacterKey).charAt(0);
+		filldown = isTrue(getSetting(HierarchyGenerator.filldownKey));
+		firstRowAsColumnNames = isTrue(getSetting(HierarchyGenerator.firstRowAsColumnNamesKey));
+		showBroaderReference = isTrue(getSetting(HierarchyGenerator.showBroaderReferenceKey));
+		showNarrowerReference = isTrue(getSetting(HierarchyGenerator.showNarrowerReferenceKey));
+		
+		//get columns to transform
+		if(!settingsMap.containsKey(HierarchyGenerator.hierarchyColumnsKey)){
+			throw new HierarchyGeneratorException("Settings file does not contain the parameter '"+HierarchyGenerator.hierarchyColumnsKey+"'.");
+		}
+		String hierarachyColumnsText = settingsMap.get(HierarchyGenerator.hierarchyColumnsKey);
+		// check if value is only positive integers, separated by comma; 0 or values with a leading 0 are not allowed 
+		if(!hierarachyColumnsText.matches("^([1-9]\\d*)(,[1-9]\\d*)*$")){
+			throw new HierarchyGeneratorException("Settings parameter '"+HierarchyGenerator.hierarchyColumnsKey+"' must be only comma separated integers larger than 0. Instead it is '"+hierarachyColumnsText+"'.");
+		}
+		hierarchyColumns = parseColumns(hierarachyColumnsText);
+		
+		String propertyColumnsText = getSetting(HierarchyGenerator.propertyColumnsKey);
+		// check if value is only positive integers, separated by comma; 0 or values with a leading 0 are not allowed 
+		if(!propertyColumnsText.matches("^([1-9]\\d*)(,[1-9]\\d*)*$") && propertyColumnsText.length()>0){
+			System.out.println("Settings parameter '"+HierarchyGenerator.propertyColumnsKey+"' must be only comma separated integers larger than 0. Instead it is '"+propertyColumnsText+"'. Property columns are ignored.");
+			propertyColumnsText = "";
+		}
+		propertyColumns = parseColumns(propertyColumnsText);
+		
+		idType = IdType.fromSetting(getSetting(HierarchyGenerator.idTypeKey));
+		int startId = 0;
+		if(idType == IdType.NUMERIC){
+			String numericStartIdString = getSetting(HierarchyGenerator.numericStartIdKey);
+			if(numericStartIdString.matches("^\\d+$")){
+				startId = Integer.parseInt(numericStartIdString);
+			}else{
+				System.out.println("Settings parameter '"+HierarchyGenerator.numericStartIdKey+"' must be a positive integer. Instead it is '"+numericStartIdString+"'. It was now set to 0.");
+			}
+		}
+		numericStartId = startId;
+		
+		outputBufferSize = parsePositiveInteger(HierarchyGenerator.outputBufferSizeKey, HierarchyGenerator.defaultOutputBufferSize);
+		outputFileChannel = isTrue(getSetting(HierarchyGenerator.outputFileChannelKey));
+		renderThreads = parsePositiveInteger(HierarchyGenerator.renderThreadsKey, HierarchyGenerator.defaultRenderThreads);
+		renderChunkSize = parsePositiveInteger(HierarchyGenerator.renderChunkSizeKey, HierarchyGenerator.defaultRenderChunkSize);
+		buildThreads = parsePositiveInteger(HierarchyGenerator.buildThreadsKey, HierarchyGenerator.defaultBuildThreads);
+		memoryReport = isTrue(getSetting(HierarchyGenerator.memoryReportKey));
+		lineStorage = LineStorage.fromSetting(getSetting(HierarchyGenerator.lineStorageKey));
+		snapshotFile = getSetting(HierarchyGenerator.snapshotFileKey);
+		incrementalStateFile = getSetting(HierarchyGenerator.incrementalStateFileKey);
+		changeListFile = getSetting(HierarchyGenerator.changeListFileKey);
+		reportFile = getSetting(HierarchyGenerator.reportFileKey);
+		jmxReport = isTrue(getSetting(HierarchyGenerator.jmxReportKey));
+		diagnosticsExamples = parsePositiveInteger(HierarchyGenerator.diagnosticsExamplesKey, HierarchyGenerator.defaultDiagnosticsExamples);
+		diagnosticsFile = getSetting(HierarchyGenerator.diagnosticsFileKey);
+		inputCompression = Compression.fromSetting(getSetting(HierarchyGenerator.inputCompressionKey), HierarchyGenerator.inputCompressionKey).forFile(inputFile);
+		outputCompression = Compression.fromSetting(getSetting(HierarchyGenerator.outputCompressionKey), HierarchyGenerator.outputCompressionKey).forFile(outputFile);
+		csvParser = CsvParser.fromSetting(getSetting(HierarchyGenerator.csvParserKey));
+		readThreads = parsePositiveInteger(HierarchyGenerator.readThreadsKey, HierarchyGenerator.defaultReadThreads);
+		readChunkSize = parsePositiveInteger(HierarchyGenerator.readChunkSizeKey, HierarchyGenerator.defaultReadChunkSize);
+		pipeline = isTrue(getSetting(HierarchyGenerator.pipelineKey));
+		streamingOutput = isTrue(getSetting(HierarchyGenerator.streamingOutputKey));
+		externalBuild = isTrue(getSetting(HierarchyGenerator.externalBuildKey));
+		externalBuildMemory = parsePositiveInteger(HierarchyGenerator.externalBuildMemoryKey, HierarchyGenerator.defaultExternalBuildMemory);
+		externalBuildDirectory = getSetting(HierarchyGenerator.externalBuildDirectoryKey);
+		outputIndexFile = getSetting(HierarchyGenerator.outputIndexFileKey);
+		
+		profileThreads = parsePositiveInteger(HierarchyGenerator.profileThreadsKey, HierarchyGenerator.defaultProfileThreads);
+		profiles = createProfiles();
+		
+		//a streamed tree is not kept after its elements are written
+		if(streamingOutput){
+			for(String settingsKey:new String[]{HierarchyGenerator.snapshotFileKey, HierarchyGenerator.incrementalStateFileKey, HierarchyGenerator.outputProfilesKey, HierarchyGenerator.outputIndexFileKey}){
+				if(getSetting(settingsKey).length() > 0){
+					throw new HierarchyGeneratorException("Settings parameter '"+settingsKey+"' can not be used together with '"+HierarchyGenerator.streamingOutputKey+"'.");
+				}
+			}
+		}
+		//an externally built tree is not kept either
+		if(externalBuild){
+			if(streamingOutput){
+				throw new HierarchyGeneratorException("Settings parameter '"+HierarchyGenerator.streamingOutputKey+"' can not be used together with '"+HierarchyGenerator.externalBuildKey+"'.");
+			}
+			for(String settingsKey:new String[]{HierarchyGenerator.snapshotFileKey, HierarchyGenerator.incrementalStateFileKey, HierarchyGenerator.outputProfilesKey}){
+				if(getSetting(settingsKey).length() > 0){
+					throw new HierarchyGeneratorException("Settings parameter '"+settingsKey+"' can not be used together with '"+HierarchyGenerator.externalBuildKey+"'.");
+				}
+			}
+		}
+		//also used for the temporary files of the output index
+		if(externalBuildDirectory.length() > 0 && !new File(externalBuildDirectory).isDirectory()){
+			throw new HierarchyGeneratorException("Directory '"+externalBuildDirectory+"' of the settings parameter '"+HierarchyGenerator.externalBuildDirectoryKey+"' does not exist.");
+		}
+		//the offsets of the output index are those of the uncompressed output file
+		if(outputIndexFile.length() > 0 && outputCompression != Compression.NONE){
+			throw new HierarchyGeneratorException("Settings parameter '"+HierarchyGenerator.outputIndexFileKey+"' can not be used with a compressed output file.");
+		}
+		
+		//check for defaultElementTemplate
+		if(getSetting(HierarchyGenerator.defaultPrefix+HierarchyGenerator.elementTemplateKey).equals("")){
+			System.out.println("Warning: There is no "+HierarchyGenerator.defaultPrefix+HierarchyGenerator.elementTemplateKey+" defined.");
+		}
+		//check for defaultPropertyTemplate
+		if(getSetting(HierarchyGenerator.defaultPrefix+HierarchyGenerator.propertyTemplateKey).equals("")){
+			System.out.println("Warning: There is no "+HierarchyGenerator.defaultPrefix+HierarchyGenerator.propertyTemplateKey+" defined.");
+		}
+		//check for defaultBroaderReferenceTemplate
+		if(showBroaderReference && getSetting(HierarchyGenerator.defaultPrefix+HierarchyGenerator.broaderReferenceTemplateKey).equals("")){
+			System.out.println("Warning: There is no "+HierarchyGenerator.defaultPrefix+HierarchyGenerator.broaderReferenceTemplateKey+" defined, even though "+HierarchyGenerator.showBroaderReferenceKey+" is set to true.");
+		}
+		//check for defaultNarrowerReferenceTemplate
+		if(showNarrowerReference && getSetting(HierarchyGenerator.defaultPrefix+HierarchyGenerator.narrowerReferenceTemplateKey).equals("")){
+			System.out.println("Warning: There is no "+HierarchyGenerator.defaultPrefix+HierarchyGenerator.narrowerReferenceTemplateKey+" defined, even though "+HierarchyGenerator.showNarrowerReferenceKey+" is set to true.");
+		}
+		
+		int maxColumn = 0;
+		for(int hierarchyColumn:hierarchyColumns){
+			maxColumn = Math.max(maxColumn, hierarchyColumn);
+		}
+		for(int propertyColumn:propertyColumns){
+			maxColumn = Math.max(maxColumn, propertyColumn);
+		}
+		isPropertyColumn = new boolean[maxColumn+1];
+		for(int propertyColumn:propertyColumns){
+			isPropertyColumn[propertyColumn] = true;
+		}
+		
+		//compile the templates, each template text only once
+		Template defaultElementTemplate = compileElementTemplate(HierarchyGenerator.defaultPrefix);
+		Template defaultBroaderReferenceTemplate = compileReferenceTemplate(HierarchyGenerator.defaultPrefix+HierarchyGenerator.broaderReferenceTemplateKey, Template.PARENT);
+		Template defaultNarrowerReferenceTemplate = compileReferenceTemplate(HierarchyGenerator.defaultPrefix+HierarchyGenerator.narrowerReferenceTemplateKey, Template.CHILD);
+		Template defaultPropertyTemplate = compilePropertyTemplate(HierarchyGenerator.defaultPrefix);
+		Template[] columnPropertyTemplates = new Template[maxColumn+1];
+		elementTemplates = new Template[maxColumn+1];
+		broaderReferenceTemplates = new Template[maxColumn+1];
+		narrowerReferenceTemplates = new Template[maxColumn+1];
+		for(int column = 1; column <= maxColumn; column++){
+			String columnPrefix = HierarchyGenerator.columnPrefix+column;
+			elementTemplates[column] = fallback(compileElementTemplate(columnPrefix), defaultElementTemplate);
+			broaderReferenceTemplates[column] = fallback(compileReferenceTemplate(columnPrefix+HierarchyGenerator.broaderReferenceTemplateKey, Template.PARENT), defaultBroaderReferenceTemplate);
+			narrowerReferenceTemplates[column] = fallback(compileReferenceTemplate(columnPrefix+HierarchyGenerator.narrowerReferenceTemplateKey, Template.CHILD), defaultNarrowerReferenceTemplate);
+			columnPropertyTemplates[column] = compilePropertyTemplate(columnPrefix);
+		}
+		//property templates: 1. specific for the property column, 2. specific for the element column, 3. default
+		propertyTemplates = new Template[maxColumn+1][maxColumn+1];
+		for(int elementColumn = 1; elementColumn <= maxColumn; elementColumn++){
+			for(int propertyColumn = 1; propertyColumn <= maxColumn; propertyColumn++){
+				propertyTemplates[elementColumn][propertyColumn] = fallback(columnPropertyTemplates[propertyColumn], fallback(columnPropertyTemplates[elementColumn], defaultPropertyTemplate));
+			}
+		}
+	}
+	
+	protected HierarchySettings[] createProfiles() throws HierarchyGeneratorException {
+		String profileNamesText = profileName == null ? getSetting(HierarchyGenerator.outputProfilesKey) : "";
+		if(profileNamesText.length() == 0){
+			return new HierarchySettings[0];
+		}
+		if(!profileNamesText.matches("^[A-Za-z0-9_-]+(,[A-Za-z0-9_-]+)*$")){
+			throw new HierarchyGeneratorException("Settings parameter '"+HierarchyGenerator.outputProfilesKey+"' must be comma separated names of letters, digits, '_' and '-'. Instead it is '"+profileNamesText+"'.");
+		}
+		String[] profileNames = profileNamesText.split(",");
+		HierarchySettings[] profileSettings = new HierarchySettings[profileNames.length];
+		Set<String> outputFiles = new HashSet<String>();
+		Set<String> outputIndexFiles = new HashSet<String>();
+		for(int profileIndex = 0; profileIndex < profileNames.length; profileIndex++){
+			String prefix = profileNames[profileIndex]+".";
+			for(String treeSettingKey:treeSettingKeys){
+				if(settingsMap.containsKey(prefix+treeSettingKey)){
+					throw new HierarchyGeneratorException("Settings parameter '"+prefix+treeSettingKey+"' can not be set for an output profile, all profiles are rendered from the same hierarchy.");
+				}
+			}
+			Map<String, String> profileSettingsMap = new HashMap<String, String>(settingsMap);
+			for(Map.Entry<String, String> setting:settingsMap.entrySet()){
+				if(setting.getKey().startsWith(prefix)){
+					profileSettingsMap.put(setting.getKey().substring(prefix.length()), setting.getValue());
+				}
+			}
+			profileSettings[profileIndex] = new HierarchySettings(profileSettingsMap, profileNames[profileIndex]);
+			if(!outputFiles.add(new File(profileSettings[profileIndex].outputFile).getAbsolutePath())){
+				throw new HierarchyGeneratorException("Output profile '"+profileNames[profileIndex]+"' writes to the same "+HierarchyGenerator.outputFileKey+" as another profile: '"+profileSettings[profileIndex].outputFile+"'.");
+			}
+			String outputIndexFile = profileSettings[profileIndex].outputIndexFile;
+			if(outputIndexFile.length() > 0 && !outputIndexFiles.add(new File(outputIndexFile).getAbsolutePath())){
+				throw new HierarchyGeneratorException("Output profile '"+profileNames[profileIndex]+"' writes to the same "+HierarchyGenerator.outputIndexFileKey+" as another profile: '"+outputIndexFile+"'.");
+			}
+		}
+		return profileSettings;
+	}
+	
+	protected Template compileElementTemplate(String prefix){
+		String templateText = getSetting(prefix+HierarchyGenerator.elementTemplateKey);
+		if(templateText.length() == 0){
+			return null;
+		}
+		return Template.compile(templateText, false, Template.ID, Template.NAME, Template.RELATIONS, Template.PROPERTIES);
+	}
+	
+	protected Template compileReferenceTemplate(String settingsKey, int placeholder){
+		String templateText = getSetting(settingsKey);
+		if(templateText.length() == 0){
+			return null;
+		}
+		return Template.compile(templateText, false, placeholder);
+	}
+	
+	protected Template compilePropertyTemplate(String prefix){
+		String templateText = getSetting(prefix+HierarchyGenerator.propertyTemplateKey);
+		if(templateText.length() == 0){
+			return null;
+		}
+		return Template.compile(templateText, true, Template.VALUE, Template.PROPERTY);
+	}
+	
+	protected static Template fallback(Template template, Template fallbackTemplate){
+		return template != null ? template : fallbackTemplate;
+	}
+	
+	protected static boolean isTrue(String value){
+		return value.equals("true")||value.equals("1");
+	}
+	
+	protected int parsePositiveInteger(String settingsKey, String defaultValue){
+		String valueText = getSetting(settingsKey);
+		if(!valueText.matches("^[1-9]\\d{0,8}$")){
+			System.out.println("Settings parameter '"+settingsKey+"' must be a positive integer. Instead it is '"+valueText+"'. It was now set to "+defaultValue+".");
+			valueText = defaultValue;
+		}
+		return Integer.parseInt(valueText);
+	}
+	
+	protected static int[] parseColumns(String columnsText){
+		if(columnsText.length() == 0){
+			return new int[0];
+		}
+		//split the columns into single values and convert them to integers
+		String[] separatedColumnsText = columnsText.split(",");
+		int[] columns = new int[separatedColumnsText.length];
+		for(int columnIndex = 0; columnIndex < separatedColumnsText.length; columnIndex++){
+			columns[columnIndex] = Integer.parseInt(separatedColumnsText[columnIndex]);
+		}
+		return columns;
+	}
+	
+	//returns null if there is neither a column specific nor a default template
+	public Template getElementTemplate(int column){
+		return elementTemplates[column];
+	}
+	
+	public Template getBroaderReferenceTemplate(int column){
+		return broaderReferenceTemplates[column];
+	}
+	
+	public Template getNarrowerReferenceTemplate(int column){
+		return narrowerReferenceTemplates[column];
+	}
+	
+	public Template getPropertyTemplate(int elementColumn, int propertyColumn){
+		return propertyTemplates[elementColumn][propertyColumn];
+	}
+	
+	public boolean isPropertyColumn(int column){
+		return column < isPropertyColumn.length && isPropertyColumn[column];
+	}
+	
+	public String getSetting(String settingsKey){
+		if(settingsKey == null){
+			return "";
+		}
+		String settingsValue = settingsMap.get(settingsKey);
+		if(settingsValue == null || settingsValue.length() == 0){
+			if(settingsKey.equals(HierarchyGenerator.outputFileKey)){
+				return HierarchyGenerator.defaultOutputFileLocation;
+			}else if(settingsKey.equals(HierarchyGenerator.separatorCharacterKey)){
+				return HierarchyGenerator.defaultSeparatorCharacter;
+			}else if(settingsKey.equals(HierarchyGenerator.quoteCharacterKey)){
+				return HierarchyGenerator.defaultQuoteCharacter;
+			}else if(settingsKey.equals(HierarchyGenerator.filldownKey)){
+				return HierarchyGenerator.defaultFilldown;
+			}else if(settingsKey.equals(HierarchyGenerator.idTypeKey)){
+				return HierarchyGenerator.defaultIdType;
+			}else if(settingsKey.equals(HierarchyGenerator.numericStartIdKey)){
+				return HierarchyGenerator.defaultNumericStartId;
+			}else if(settingsKey.equals(HierarchyGenerator.outputBufferSizeKey)){
+				return HierarchyGenerator.defaultOutputBufferSize;
+			}else if(settingsKey.equals(HierarchyGenerator.renderThreadsKey)){
+				return HierarchyGenerator.defaultRenderThreads;
+			}else if(settingsKey.equals(HierarchyGenerator.renderChunkSizeKey)){
+				return HierarchyGenerator.defaultRenderChunkSize;
+			}else if(settingsKey.equals(HierarchyGenerator.buildThreadsKey)){
+				return HierarchyGenerator.defaultBuildThreads;
+			}else if(settingsKey.equals(HierarchyGenerator.lineStorageKey)){
+				return HierarchyGenerator.defaultLineStorage;
+			}else if(settingsKey.equals(HierarchyGenerator.profileThreadsKey)){
+				return HierarchyGenerator.defaultProfileThreads;
+			}else if(settingsKey.equals(HierarchyGenerator.diagnosticsExamplesKey)){
+				return HierarchyGenerator.defaultDiagnosticsExamples;
+			}else if(settingsKey.equals(HierarchyGenerator.inputCompressionKey) || settingsKey.equals(HierarchyGenerator.outputCompressionKey)){
+				return HierarchyGenerator.defaultCompression;
+			}else if(settingsKey.equals(HierarchyGenerator.csvParserKey)){
+				return HierarchyGenerator.defaultCsvParser;
+			}else if(settingsKey.equals(HierarchyGenerator.readThreadsKey)){
+				return HierarchyGenerator.defaultReadThreads;
+			}else if(settingsKey.equals(HierarchyGenerator.readChunkSizeKey)){
+				return HierarchyGenerator.defaultReadChunkSize;
+			}else if(settingsKey.equals(HierarchyGenerator.externalBuildMemoryKey)){
+				return HierarchyGenerator.defaultExternalBuildMemory;
+			}
+			
+			return "";
+		}
+		return settingsValue;
+	}
+}
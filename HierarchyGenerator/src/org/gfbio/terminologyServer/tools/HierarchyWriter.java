@@ -0,0 +1,377 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gfbio.terminologyServer.tools.util.BackgroundOutputStream;
+import org.gfbio.terminologyServer.tools.util.ChannelWriter;
+import org.gfbio.terminologyServer.tools.util.CountingWriter;
+
+/**
+ * Writes the header, the elements of the hierarchy and the footer.
+ * 
+ * The elements are written level by level: first the children of the root node, then the children of the nodes
+ * of the first hierarchy column, of the second hierarchy column and so on, each level in tree order.
+ * The parents of each level are collected in one traversal of the tree.
+ * With renderThreads larger than 1 the elements are rendered in chunks on a thread pool and written in the same order.
+ * If the output is written by a BackgroundOutputStream, header and footer files that are copied unchanged are transferred to it as files.
+ * With an outputIndexFile the bytes of the output are counted and the offset and length of every element are added to the OutputIndexWriter.
+ */
+public class HierarchyWriter {
+	protected final HierarchyGenerator hierarchyGenerator;
+	protected final HierarchySettings settings;
+	protected final NodeRenderer nodeRenderer;
+	//set by openOutput if the output is written on its own thread
+	protected BackgroundOutputStream backgroundOutput;
+	//set by openOutput if the output index is written
+	protected CountingWriter outputCount;
+	protected OutputIndexWriter outputIndex;
+	
+	public HierarchyWriter(HierarchyGenerator hierarchyGenerator) {
+		this(hierarchyGenerator, hierarchyGenerator.settings);
+	}
+	
+	//writes the output with the templates of the given settings, e.g. of an output profile
+	public HierarchyWriter(HierarchyGenerator hierarchyGenerator, HierarchySettings settings) {
+		this.hierarchyGenerator = hierarchyGenerator;
+		this.settings = settings;
+		this.nodeRenderer = new NodeRenderer(hierarchyGenerator, settings);
+	}
+	
+	//the output is buffered with outputBufferSize and only written when it is flushed or closed
+	public Writer openOutput(OutputStream outputStream) throws IOException{
+		backgroundOutput = outputStream instanceof BackgroundOutputStream ? (BackgroundOutputStream)outputStream : null;
+		Writer out;
+		if(settings.outputFileChannel){
+			WritableByteChannel channel;
+			if(outputStream instanceof FileOutputStream){
+				channel = ((FileOutputStream)outputStream).getChannel();
+			}else{
+				channel = Channels.newChannel(outputStream);
+			}
+			out = new ChannelWriter(channel, Charset.forName("UTF-8"), settings.outputBufferSize);
+		}else{
+			out = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF8"), settings.outputBufferSize);
+		}
+		if(settings.outputIndexFile.length() > 0){
+			outputIndex = new OutputIndexWriter(settings);
+			outputCount = new CountingWriter(out);
+			return outputCount;
+		}
+		return out;
+	}
+	
+	public void write(HierarchyNode rootNode, Writer out) throws IOException{
+		try{
+			writeHeader(out);
+			
+			if(rootNode != null){
+				writeNodes(rootNode, out);
+			}
+			
+			writeFooter(out);
+			writeIndex();
+		}finally{
+			closeIndex();
+		}
+	}
+	
+	//writes the outputIndexFile after the elements are written
+	public void writeIndex() throws IOException{
+		if(outputIndex != null){
+			outputIndex.write(new File(settings.outputIndexFile));
+			outputIndex = null;
+		}
+	}
+	
+	//deletes the temporary files of the output index, also if the output failed
+	public void closeIndex(){
+		if(outputIndex != null){
+			outputIndex.delete();
+			outputIndex = null;
+		}
+	}
+	
+	//write the header from file
+	public void writeHeader(Writer out) throws IOException{
+		copyFile(settings.headerFile, "Header", out);
+	}
+	
+	//write the footer from file
+	public void writeFooter(Writer out) throws IOException{
+		copyFile(settings.footerFile, "Footer", out);
+	}
+	
+	public void writeNodes(HierarchyNode rootNode, Writer out) throws IOException{
+		List<HierarchyNode> parentNodes = collectParentNodes(rootNode);
+		if(settings.renderThreads > 1){
+			writeNodesInParallel(parentNodes, out);
+			return;
+		}
+		for(HierarchyNode parentNode:parentNodes){
+			for(int childIndex = 0; childIndex < parentNode.getChildNodeCount(); childIndex++){
+				writeElement(nodeRenderer, parentNode, parentNode.getChildNode(childIndex), childIndex, out);
+			}
+		}
+	}
+	
+	//renders chunks of elements on renderThreads threads and writes the rendered chunks in the original order
+	protected void writeNodesInParallel(List<HierarchyNode> parentNodes, Writer out) throws IOException{
+		ExecutorService executor = Executors.newFixedThreadPool(settings.renderThreads);
+		try{
+			//limit the number of rendered chunks waiting to be written
+			int maxPendingChunks = settings.renderThreads*2;
+			LinkedList<RenderChunk> pendingChunks = new LinkedList<RenderChunk>();
+			RenderChunk chunk = new RenderChunk(settings.renderChunkSize);
+			for(HierarchyNode parentNode:parentNodes){
+				for(int childIndex = 0; childIndex < parentNode.getChildNodeCount(); childIndex++){
+					chunk.add(parentNode, parentNode.getChildNode(childIndex), childIndex);
+					if(chunk.isFull()){
+						chunk.renderedChunk = executor.submit(chunk);
+						pendingChunks.add(chunk);
+						chunk = new RenderChunk(settings.renderChunkSize);
+						if(pendingChunks.size() >= maxPendingChunks){
+							writeChunk(pendingChunks.removeFirst(), out);
+						}
+					}
+				}
+			}
+			chunk.renderedChunk = executor.submit(chunk);
+			pendingChunks.add(chunk);
+			while(!pendingChunks.isEmpty()){
+				writeChunk(pendingChunks.removeFirst(), out);
+			}
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+	
+	protected String getRenderedChunk(Future<String> renderedChunk) throws IOException{
+		try {
+			return renderedChunk.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while rendering the elements.");
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException){
+				throw (IOException)e.getCause();
+			}else if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	protected void writeChunk(RenderChunk chunk, Writer out) throws IOException{
+		String renderedChunk = getRenderedChunk(chunk.renderedChunk);
+		if(outputIndex == null){
+			out.write(renderedChunk);
+			return;
+		}
+		//the elements are written one by one to count their bytes
+		int start = 0;
+		for(int index = 0; index < chunk.size; index++){
+			long offset = outputCount.getCount();
+			out.write(renderedChunk, start, chunk.ends[index]-start);
+			start = chunk.ends[index];
+			outputIndex.add(chunk.nodes[index].id, getParentId(chunk.parentNodes[index]), chunk.childIndexes[index], chunk.nodes[index].getChildNodeCount(),
+					offset, outputCount.getCount()-offset);
+		}
+	}
+	
+	//renders the element and adds it to the output index
+	protected void writeElement(NodeRenderer renderer, HierarchyNode parentNode, HierarchyNode node, int childIndex, Writer out) throws IOException{
+		if(outputIndex == null){
+			render(renderer, parentNode, node, out);
+			return;
+		}
+		long offset = outputCount.getCount();
+		render(renderer, parentNode, node, out);
+		outputIndex.add(node.id, getParentId(parentNode), childIndex, node.getChildNodeCount(), offset, outputCount.getCount()-offset);
+	}
+	
+	//the children of the root node have no parent in the output
+	protected static String getParentId(HierarchyNode parentNode){
+		return parentNode.level >= 0 ? parentNode.id : null;
+	}
+	
+	protected void render(NodeRenderer renderer, HierarchyNode parentNode, HierarchyNode node, Writer out) throws IOException{
+		if(hierarchyGenerator.incrementalState != null && settings == hierarchyGenerator.settings){
+			//unchanged elements of the previous run are not rendered again, the elements of output profiles are not kept
+			hierarchyGenerator.incrementalState.render(renderer, parentNode, node, out);
+		}else{
+			renderer.render(parentNode, node, out);
+		}
+	}
+	
+	protected class RenderChunk implements Callable<String> {
+		protected final HierarchyNode[] parentNodes;
+		protected final HierarchyNode[] nodes;
+		protected final int[] childIndexes;
+		//the end of every element in the rendered chunk
+		protected final int[] ends;
+		protected int size;
+		protected Future<String> renderedChunk;
+		
+		protected RenderChunk(int capacity) {
+			parentNodes = new HierarchyNode[capacity];
+			nodes = new HierarchyNode[capacity];
+			childIndexes = new int[capacity];
+			ends = new int[capacity];
+			size = 0;
+		}
+		
+		protected void add(HierarchyNode parentNode, HierarchyNode node, int childIndex){
+			parentNodes[size] = parentNode;
+			nodes[size] = node;
+			childIndexes[size] = childIndex;
+			size++;
+		}
+		
+		protected boolean isFull(){
+			return size == nodes.length;
+		}
+		
+		@Override
+		public String call() throws IOException {
+			//a renderer keeps the state of the current element, so every chunk uses its own
+			NodeRenderer chunkRenderer = new NodeRenderer(hierarchyGenerator, settings);
+			StringWriter chunkOut = new StringWriter();
+			for(int index = 0; index < size; index++){
+				render(chunkRenderer, parentNodes[index], nodes[index], chunkOut);
+				ends[index] = chunkOut.getBuffer().length();
+			}
+			return chunkOut.toString();
+		}
+	}
+	
+	//the root node and the nodes that have children, grouped by their level, each level in tree order
+	protected List<HierarchyNode> collectParentNodes(HierarchyNode rootNode){
+		List<List<HierarchyNode>> parentNodesByLevel = new ArrayList<List<HierarchyNode>>(settings.hierarchyColumns.length);
+		for(int level = 0; level < settings.hierarchyColumns.length; level++){
+			parentNodesByLevel.add(new ArrayList<HierarchyNode>());
+		}
+		List<HierarchyNode> parentNodes = new ArrayList<HierarchyNode>();
+		if(rootNode.getChildNodeCount() > 0){
+			//the children of the root node first
+			parentNodes.add(rootNode);
+			for(int childIndex = 0; childIndex < rootNode.getChildNodeCount(); childIndex++){
+				collectParentNodes(rootNode.getChildNode(childIndex), parentNodesByLevel);
+			}
+		}
+		//then according to the hierarchy
+		for(List<HierarchyNode> levelParentNodes:parentNodesByLevel){
+			parentNodes.addAll(levelParentNodes);
+		}
+		return parentNodes;
+	}
+	
+	protected void collectParentNodes(HierarchyNode node, List<List<HierarchyNode>> parentNodesByLevel){
+		if(node.getChildNodeCount() == 0){
+			return;
+		}
+		parentNodesByLevel.get(node.getLevel()).add(node);
+		for(int childIndex = 0; childIndex < node.getChildNodeCount(); childIndex++){
+			collectParentNodes(node.getChildNode(childIndex), parentNodesByLevel);
+		}
+	}
+	
+	protected void copyFile(String fileLink, String fileDescription, Writer out) throws IOException{
+		if(fileLink.length()>0){
+			File file = new File(fileLink);
+			if(file.exists()){
+				if(file.isFile()){
+					if(backgroundOutput != null && isCopiedUnchanged(file)){
+						out.flush();
+						backgroundOutput.transferFrom(file);
+						if(outputCount != null){
+							outputCount.addBytes(file.length());
+						}
+						return;
+					}
+					BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF8"));
+					String line = reader.readLine();
+					while(line != null){
+						out.write(line);
+						out.write('\n');
+						line = reader.readLine();
+					}
+					reader.close();
+				}else{
+					System.out.println(fileDescription+" file: '"+fileLink+"' is not a file.");
+				}
+			}else{
+				System.out.println(fileDescription+" file: '"+fileLink+"' does not exist.");
+			}
+		}
+	}
+	
+	//true if copying the lines gives the same bytes: UTF-8 without \r that ends with \n
+	protected boolean isCopiedUnchanged(File file) throws IOException{
+		FileInputStream input = new FileInputStream(file);
+		try{
+			FileChannel channel = input.getChannel();
+			CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+			ByteBuffer bytes = ByteBuffer.allocate(65536);
+			CharBuffer chars = CharBuffer.allocate(65536);
+			byte lastByte = '\n';
+			boolean endOfInput = false;
+			while(!endOfInput){
+				endOfInput = channel.read(bytes) < 0;
+				bytes.flip();
+				for(int index = bytes.position(); index < bytes.limit(); index++){
+					if(bytes.get(index) == '\r'){
+						return false;
+					}
+				}
+				if(bytes.limit() > 0){
+					lastByte = bytes.get(bytes.limit()-1);
+				}
+				CoderResult result = decoder.decode(bytes, chars, endOfInput);
+				while(result.isOverflow()){
+					chars.clear();
+					result = decoder.decode(bytes, chars, endOfInput);
+				}
+				if(result.isError()){
+					return false;
+				}
+				chars.clear();
+				bytes.compact();
+			}
+			chars.clear();
+			if(decoder.flush(chars).isError()){
+				return false;
+			}
+			return lastByte == '\n';
+		}finally{
+			input.close();
+		}
+	}
+}
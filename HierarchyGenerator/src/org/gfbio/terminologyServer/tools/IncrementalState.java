@@ -0,0 +1,411 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the ids and the rendered element blocks of the previous run, so that a changed input keeps the ids of its existing nodes
+ * and only the elements of added or changed nodes are rendered again.
+ * A node is the same as in the previous run if it has the same path of names from the root node.
+ * New nodes get ids that were never used in the previous runs: the numeric ids continue after the largest id,
+ * the ordered numeric ids continue after the largest sibling number of the parent and name based ids avoid all previous ids.
+ * Every element has a fingerprint of everything its block is rendered from (id, name, column, parent, children and property values),
+ * the block of the previous run is written again if the fingerprint did not change.
+ *
+ * Layout of the state file: magic, version, id key, render key, next numeric id,
+ * nodes in preorder (name, id, next sibling number of its children, fingerprint, block, number of children).
+ */
+public class IncrementalState {
+	protected static final int magic = 0x48474932;
+	protected static final int version = 1;
+	protected static final String added = "added";
+	protected static final String changed = "changed";
+	protected static final String removed = "removed";
+
+	protected final HierarchyGenerator hierarchyGenerator;
+	protected final HierarchySettings settings;
+	protected final File stateFile;
+	protected final File changeListFile;
+
+	//the tree of the previous run, null if there is none for these settings
+	protected PreviousNode previousRoot;
+	//the elements of the previous run can only be reused if they were rendered with the same templates and column names
+	protected String previousRenderKey;
+	protected int nextNumericId;
+	//the previous node of every node while the ids are assigned, indexed by the internal id
+	protected List<PreviousNode> assignedNodes;
+
+	//indexed by the internal id, only used after the tree is built
+	protected PreviousNode[] previousNodes;
+	protected long[] fingerprints;
+	protected String[] blocks;
+	protected List<String> changes;
+	protected int addedCount;
+	protected int changedCount;
+	protected int removedCount;
+
+	public IncrementalState(HierarchyGenerator hierarchyGenerator, File stateFile, File changeListFile) {
+		this.hierarchyGenerator = hierarchyGenerator;
+		this.settings = hierarchyGenerator.settings;
+		this.stateFile = stateFile;
+		this.changeListFile = changeListFile;
+	}
+
+	protected static class PreviousNode {
+		protected final String name;
+		protected final String id;
+		protected int nextSiblingNumber;
+		protected final long fingerprint;
+		protected final String block;
+		protected Map<String, PreviousNode> childNodes;
+		protected boolean found;
+
+		protected PreviousNode(String name, String id, int nextSiblingNumber, long fingerprint, String block) {
+			this.name = name;
+			this.id = id;
+			this.nextSiblingNumber = nextSiblingNumber;
+			this.fingerprint = fingerprint;
+			this.block = block;
+		}
+
+		protected PreviousNode getChildNode(String name){
+			return childNodes != null ? childNodes.get(name) : null;
+		}
+	}
+
+	//the ids of the previous run can only be kept for the same hierarchy columns and the same id type
+	protected String getIdKey(){
+		return HierarchyGenerator.hierarchyColumnsKey+'='+Arrays.toString(settings.hierarchyColumns)+'\n'
+				+HierarchyGenerator.idTypeKey+'='+settings.idType;
+	}
+
+	//everything except the node itself that changes the rendered elements, the column names are only known after the input is read
+	protected String getRenderKey(){
+		StringBuilder renderKey = new StringBuilder();
+		renderKey.append(HierarchyGenerator.propertyColumnsKey).append('=').append(Arrays.toString(settings.propertyColumns)).append('\n');
+		renderKey.append(HierarchyGenerator.showBroaderReferenceKey).append('=').append(settings.showBroaderReference).append('\n');
+		renderKey.append(HierarchyGenerator.showNarrowerReferenceKey).append('=').append(settings.showNarrowerReference).append('\n');
+		for(Map.Entry<String, String> setting:new TreeMap<String, String>(settings.settingsMap).entrySet()){
+			if(setting.getKey().endsWith("Template")){
+				renderKey.append(setting.getKey()).append('=').append(setting.getValue()).append('\n');
+			}
+		}
+		renderKey.append("columnNames=").append(Arrays.toString(hierarchyGenerator.columnNames));
+		return renderKey.toString();
+	}
+
+	//reads the state of the previous run and reserves its ids, must be called before the ids are assigned
+	public void load(){
+		assignedNodes = new ArrayList<PreviousNode>();
+		nextNumericId = settings.numericStartId;
+		if(stateFile.isFile()){
+			try{
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile), 65536));
+				try{
+					if(in.readInt() != magic || in.readInt() != version || !getIdKey().equals(readString(in))){
+						System.out.println("Incremental state file '"+stateFile.getPath()+"' was saved for other hierarchy columns, another id type or another version. All ids are assigned again.");
+					}else{
+						previousRenderKey = readString(in);
+						nextNumericId = Math.max(nextNumericId, in.readInt());
+						previousRoot = readNode(in);
+					}
+				}finally{
+					in.close();
+				}
+			}catch(EOFException e){
+				System.out.println("Incremental state file '"+stateFile.getPath()+"' is damaged. All ids are assigned again.");
+				previousRoot = null;
+			}catch(IOException e){
+				System.out.println("Incremental state file '"+stateFile.getPath()+"' could not be read: "+e.getMessage()+". All ids are assigned again.");
+				previousRoot = null;
+			}
+		}
+		if(previousRoot != null){
+			hierarchyGenerator.numericIdCounter = nextNumericId;
+			reserveIds(previousRoot);
+		}
+		//the root node is always the first node
+		assignedNodes.add(previousRoot);
+	}
+
+	protected PreviousNode readNode(DataInputStream in) throws IOException{
+		PreviousNode node = new PreviousNode(readString(in), readString(in), in.readInt(), in.readLong(), readString(in));
+		int childNodeCount = in.readInt();
+		if(childNodeCount > 0){
+			node.childNodes = new HashMap<String, PreviousNode>(childNodeCount*4/3+1);
+			for(int childIndex = 0; childIndex < childNodeCount; childIndex++){
+				PreviousNode childNode = readNode(in);
+				node.childNodes.put(childNode.name, childNode);
+			}
+		}
+		return node;
+	}
+
+	protected static String readString(DataInputStream in) throws IOException{
+		int length = in.readInt();
+		if(length < 0){
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, TreeSnapshot.utf8);
+	}
+
+	//the ids of removed nodes are reserved as well, they are never given to other nodes
+	protected void reserveIds(PreviousNode node){
+		if(node.childNodes == null){
+			return;
+		}
+		for(PreviousNode childNode:node.childNodes.values()){
+			hierarchyGenerator.nameIdAllocator.reserve(childNode.id);
+			reserveIds(childNode);
+		}
+	}
+
+	//called for the nodes in the order of their internal ids, the parents get their ids before their children
+	public void assignId(HierarchyNode parentNode, HierarchyNode childNode, int siblingNumber){
+		PreviousNode previousParent = assignedNodes.get(parentNode.internalId);
+		PreviousNode previousNode = previousParent != null ? previousParent.getChildNode(childNode.name) : null;
+		String id;
+		if(previousNode != null){
+			id = previousNode.id;
+		}else if(previousParent != null && settings.idType == HierarchySettings.IdType.ORDERED_NUMERIC){
+			//the sibling numbers of the existing and the removed children are kept
+			id = hierarchyGenerator.generateNewID(childNode.name, parentNode, previousParent.nextSiblingNumber++);
+		}else{
+			id = hierarchyGenerator.generateNewID(childNode.name, parentNode, siblingNumber);
+		}
+		childNode.setId(id, hierarchyGenerator.nodeCount++);
+		assignedNodes.add(previousNode);
+	}
+
+	//compares the tree with the previous run, the tree can also be loaded from a snapshot
+	public void compare(HierarchyNode rootNode){
+		assignedNodes = null;
+		boolean reuseBlocks = getRenderKey().equals(previousRenderKey);
+		if(previousRenderKey != null && !reuseBlocks){
+			System.out.println("The templates or the column names changed since the previous run. All elements are rendered again.");
+		}
+		previousNodes = new PreviousNode[hierarchyGenerator.nodeCount];
+		fingerprints = new long[hierarchyGenerator.nodeCount];
+		blocks = new String[hierarchyGenerator.nodeCount];
+		changes = new ArrayList<String>();
+		addedCount = 0;
+		changedCount = 0;
+		removedCount = 0;
+		List<String> path = new ArrayList<String>();
+		previousNodes[rootNode.internalId] = previousRoot;
+		if(previousRoot != null){
+			previousRoot.found = true;
+		}
+		for(int childIndex = 0; childIndex < rootNode.getChildNodeCount(); childIndex++){
+			compare(rootNode, rootNode.getChildNode(childIndex), previousRoot, path, reuseBlocks);
+		}
+		if(previousRoot != null){
+			collectRemovedNodes(previousRoot, path);
+		}
+	}
+
+	protected void compare(HierarchyNode parentNode, HierarchyNode node, PreviousNode previousParent, List<String> path, boolean reuseBlocks){
+		path.add(node.name);
+		PreviousNode previousNode = previousParent != null ? previousParent.getChildNode(node.name) : null;
+		long fingerprint = fingerprint(parentNode, node);
+		previousNodes[node.internalId] = previousNode;
+		fingerprints[node.internalId] = fingerprint;
+		if(previousNode == null){
+			addedCount++;
+			changes.add(formatChange(added, node.id, path));
+		}else{
+			previousNode.found = true;
+			if(previousNode.fingerprint != fingerprint || !previousNode.id.equals(node.id)){
+				changedCount++;
+				changes.add(formatChange(changed, node.id, path));
+			}else if(reuseBlocks){
+				blocks[node.internalId] = previousNode.block;
+			}
+		}
+		for(int childIndex = 0; childIndex < node.getChildNodeCount(); childIndex++){
+			compare(node, node.getChildNode(childIndex), previousNode, path, reuseBlocks);
+		}
+		path.remove(path.size()-1);
+	}
+
+	protected void collectRemovedNodes(PreviousNode node, List<String> path){
+		if(node.childNodes == null){
+			return;
+		}
+		for(PreviousNode childNode:node.childNodes.values()){
+			path.add(childNode.name);
+			if(!childNode.found){
+				removedCount++;
+				changes.add(formatChange(removed, childNode.id, path));
+			}
+			collectRemovedNodes(childNode, path);
+			path.remove(path.size()-1);
+		}
+	}
+
+	protected static String formatChange(String change, String id, List<String> path){
+		StringBuilder line = new StringBuilder(change).append('\t').append(id).append('\t');
+		for(int index = 0; index < path.size(); index++){
+			if(index > 0){
+				line.append('/');
+			}
+			line.append(path.get(index));
+		}
+		return line.toString();
+	}
+
+	//FNV-1a over everything the element is rendered from, the narrower references are written in the order of the names
+	protected long fingerprint(HierarchyNode parentNode, HierarchyNode node){
+		LineStore lineStore = hierarchyGenerator.lineStore;
+		long hash = 0xcbf29ce484222325L;
+		hash = hash(hash, node.id);
+		hash = hash(hash, node.name);
+		hash = hash(hash, Integer.toString(node.columnIndex));
+		hash = hash(hash, parentNode.id);
+		if(node.getChildNodeCount() > 0){
+			for(HierarchyNode childNode:node.getChildNodesByName()){
+				hash = hash(hash, childNode.id);
+			}
+		}
+		for(int lineIndex = 0; lineIndex < node.getLineCount(); lineIndex++){
+			//the line numbers are not part of the element, a line inserted above must not change the following elements
+			int line = node.getLine(lineIndex);
+			for(int propertyColumn:settings.propertyColumns){
+				hash = hash(hash, lineStore.hasColumn(line, propertyColumn) ? lineStore.getValue(line, propertyColumn) : null);
+			}
+		}
+		return hash;
+	}
+
+	protected static long hash(long hash, String value){
+		if(value == null){
+			return (hash ^ 0xFFFF) * 0x100000001b3L;
+		}
+		for(int index = 0; index < value.length(); index++){
+			hash = (hash ^ value.charAt(index)) * 0x100000001b3L;
+		}
+		//a separator, so that the values can not be shifted into each other
+		return (hash ^ 0xFFFE) * 0x100000001b3L;
+	}
+
+	//writes the block of the previous run if the node did not change, otherwise renders it, can be called by several render threads
+	public void render(NodeRenderer nodeRenderer, HierarchyNode parentNode, HierarchyNode node, Writer out) throws IOException{
+		String block = blocks[node.internalId];
+		if(block == null){
+			StringWriter blockOut = new StringWriter();
+			nodeRenderer.render(parentNode, node, blockOut);
+			block = blockOut.toString();
+			blocks[node.internalId] = block;
+		}
+		out.write(block);
+	}
+
+	//saves the state of this run and writes the change list, a state that can not be saved is only reported
+	public void save(HierarchyNode rootNode){
+		System.out.println("Incremental run: "+addedCount+" added, "+changedCount+" changed and "+removedCount+" removed nodes.");
+		if(changeListFile != null){
+			try{
+				Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(changeListFile), "UTF8"));
+				try{
+					for(String change:changes){
+						out.write(change);
+						out.write('\n');
+					}
+				}finally{
+					out.close();
+				}
+			}catch(IOException e){
+				System.out.println("Change list file '"+changeListFile.getPath()+"' could not be written: "+e.getMessage());
+			}
+		}
+		changes = null;
+
+		File temporaryFile = new File(stateFile.getPath()+".tmp");
+		try{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 65536));
+			try{
+				out.writeInt(magic);
+				out.writeInt(version);
+				TreeSnapshot.writeString(out, getIdKey());
+				TreeSnapshot.writeString(out, getRenderKey());
+				out.writeInt(getNextNumericId(rootNode, Math.max(nextNumericId, hierarchyGenerator.numericIdCounter)));
+				writeNode(out, rootNode);
+			}finally{
+				out.close();
+			}
+			//replace the previous state only with a complete one
+			if((stateFile.exists() && !stateFile.delete()) || !temporaryFile.renameTo(stateFile)){
+				throw new IOException("could not replace the incremental state file");
+			}
+		}catch(IOException e){
+			temporaryFile.delete();
+			System.out.println("Incremental state file '"+stateFile.getPath()+"' could not be saved: "+e.getMessage());
+		}
+		previousRoot = null;
+		previousNodes = null;
+		fingerprints = null;
+		blocks = null;
+	}
+
+	protected void writeNode(DataOutputStream out, HierarchyNode node) throws IOException{
+		TreeSnapshot.writeString(out, node.name);
+		TreeSnapshot.writeString(out, node.id);
+		out.writeInt(getNextSiblingNumber(node));
+		out.writeLong(fingerprints[node.internalId]);
+		TreeSnapshot.writeString(out, blocks[node.internalId]);
+		out.writeInt(node.getChildNodeCount());
+		for(int childIndex = 0; childIndex < node.getChildNodeCount(); childIndex++){
+			writeNode(out, node.getChildNode(childIndex));
+		}
+	}
+
+	//the ids of a tree loaded from a snapshot were not counted by the generator
+	protected int getNextNumericId(HierarchyNode node, int nextNumericId){
+		for(int childIndex = 0; childIndex < node.getChildNodeCount(); childIndex++){
+			HierarchyNode childNode = node.getChildNode(childIndex);
+			if(settings.idType == HierarchySettings.IdType.NUMERIC && childNode.id.matches("^\\d{1,9}$")){
+				nextNumericId = Math.max(nextNumericId, Integer.parseInt(childNode.id)+1);
+			}
+			nextNumericId = getNextNumericId(childNode, nextNumericId);
+		}
+		return nextNumericId;
+	}
+
+	//the next free sibling number for new children of the node, only used for ordered numeric ids
+	protected int getNextSiblingNumber(HierarchyNode node){
+		int nextSiblingNumber = node.getChildNodeCount()+1;
+		PreviousNode previousNode = previousNodes[node.internalId];
+		if(previousNode != null){
+			nextSiblingNumber = Math.max(nextSiblingNumber, previousNode.nextSiblingNumber);
+		}
+		if(settings.idType == HierarchySettings.IdType.ORDERED_NUMERIC){
+			for(int childIndex = 0; childIndex < node.getChildNodeCount(); childIndex++){
+				String childId = node.getChildNode(childIndex).id;
+				String siblingNumber = childId.substring(childId.lastIndexOf('.')+1);
+				if(siblingNumber.matches("^\\d{1,9}$")){
+					nextSiblingNumber = Math.max(nextSiblingNumber, Integer.parseInt(siblingNumber)+1);
+				}
+			}
+		}
+		return nextSiblingNumber;
+	}
+}
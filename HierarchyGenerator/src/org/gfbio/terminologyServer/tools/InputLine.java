@@ -0,0 +1,29 @@
+package org.gfbio.terminologyServer.tools;
+
+public class InputLine {
+	//line number for error output: human readable counting, i.e. first line number is #1
+	protected final int lineNumber;
+	protected final String[] values;
+	
+	public InputLine(int lineNumber, String[] values) {
+		this.lineNumber = lineNumber;
+		this.values = values;
+	}
+	
+	public int getLineNumber() {
+		return lineNumber;
+	}
+	
+	//the columns are numbered as entered by the user with the first column having the index 1!
+	public boolean hasColumn(int column){
+		return values.length >= column;
+	}
+	
+	public String getValue(int column){
+		return values[column-1];
+	}
+	
+	public void setValue(int column, String value){
+		values[column-1] = value;
+	}
+}
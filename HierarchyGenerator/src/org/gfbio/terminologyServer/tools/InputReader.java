@@ -0,0 +1,259 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.gfbio.terminologyServer.tools.HierarchySettings.CsvParser;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Reads the input file line by line, applies the fill down against the previous line and hands every line directly to the tree builder.
+ * The lines are parsed by the CsvChannelReader, which only creates the values of the hierarchy and property columns,
+ * or by opencsv if csvParser is opencsv or the separator or quote character is not an ASCII character.
+ * An uncompressed input file is parsed by the ParallelCsvReader if readThreads is larger than 1, the fill down is still done here line by line.
+ * With pipeline the lines are parsed on their own thread and handed over in batches through a bounded queue,
+ * so that the tree is built while the input is read and parsed.
+ */
+public class InputReader {
+	protected static final int batchSize = 1024;
+	protected static final int queuedBatches = 16;
+	//marks the end of the lines in the queue
+	protected static final String[][] end = new String[0][];
+	
+	protected final HierarchyGenerator hierarchyGenerator;
+	protected final int[] hierarchyColumns;
+	protected final HierarchySettings settings;
+	
+	protected InputLine previousLine;
+	protected int lineCount;
+	//one of them is used
+	protected CSVReader csvReader;
+	protected CsvChannelReader channelReader;
+	protected ParallelCsvReader parallelReader;
+	protected LineQueue lineQueue;
+	
+	public InputReader(HierarchyGenerator hierarchyGenerator) {
+		this.hierarchyGenerator = hierarchyGenerator;
+		this.settings = hierarchyGenerator.settings;
+		this.hierarchyColumns = settings.hierarchyColumns;
+	}
+	
+	public void read(File inputFile, TreeBuilder treeBuilder) throws IOException{
+		InputStream input = new FileInputStream(inputFile);
+		try{
+			read(input, treeBuilder);
+		}finally{
+			input.close();
+		}
+	}
+	
+	//reads the UTF-8 encoded lines of the input, the input is not closed
+	public void read(InputStream input, TreeBuilder treeBuilder) throws IOException{
+		csvReader = null;
+		channelReader = null;
+		parallelReader = null;
+		lineQueue = null;
+		if(settings.csvParser == CsvParser.OPENCSV || !CsvChannelReader.supports(settings)){
+			csvReader = new CSVReader(new InputStreamReader(input, "UTF-8"),settings.separatorCharacter,settings.quoteCharacter);
+		}else if(settings.readThreads > 1 && input instanceof FileInputStream && isLargerThanChunk(((FileInputStream)input).getChannel())){
+			parallelReader = new ParallelCsvReader(((FileInputStream)input).getChannel(), settings);
+		}else{
+			//a file is read through its own channel, other streams through a channel that copies their bytes
+			ReadableByteChannel channel = input instanceof FileInputStream ? ((FileInputStream)input).getChannel() : Channels.newChannel(input);
+			channelReader = new CsvChannelReader(channel, settings);
+		}
+		try{
+			if(settings.pipeline){
+				lineQueue = new LineQueue();
+			}
+			readLines(treeBuilder);
+		}finally{
+			if(lineQueue != null){
+				lineQueue.close();
+			}
+			if(parallelReader != null){
+				parallelReader.close();
+			}
+		}
+	}
+	
+	protected void readLines(TreeBuilder treeBuilder) throws IOException{
+		int lineNumber = 0;
+		previousLine = null;
+		//the time of parsing, fill down and inserting the lines is only measured for the run report
+		RunReport runReport = hierarchyGenerator.runReport;
+		long partStart = runReport != null ? System.nanoTime() : 0;
+		//read file line by line
+		String[] values = readValues(settings.firstRowAsColumnNames);
+		while(values != null){
+			if(runReport != null){
+				partStart = runReport.addPart(RunReport.parsePart, partStart);
+			}
+			lineNumber++;
+			if(lineNumber == 1 && settings.firstRowAsColumnNames){
+				//save first row as column names
+				hierarchyGenerator.columnNames = values;
+			}else{
+				InputLine line = new InputLine(lineNumber, values);
+				if(settings.filldown && previousLine != null){
+					fillDown(line);
+					if(runReport != null){
+						partStart = runReport.addPart(RunReport.filldownPart, partStart);
+					}
+				}
+				treeBuilder.addLine(line);
+				if(runReport != null){
+					partStart = runReport.addPart(RunReport.insertPart, partStart);
+				}
+				previousLine = line;
+				lineCount++;
+			}
+			values = readValues(false);
+		}
+		if(runReport != null){
+			runReport.addPart(RunReport.parsePart, partStart);
+		}
+	}
+	
+	//a file of one chunk is read by this thread
+	protected boolean isLargerThanChunk(FileChannel channel) throws IOException{
+		return channel.size()-channel.position() > settings.readChunkSize;
+	}
+	
+	protected String[] readValues(boolean allColumns) throws IOException{
+		if(lineQueue != null){
+			return lineQueue.readNext();
+		}
+		return parseValues(allColumns);
+	}
+	
+	//with allColumns the channel reader creates the values of all columns, e.g. for the column names
+	protected String[] parseValues(boolean allColumns) throws IOException{
+		if(parallelReader != null){
+			return parallelReader.readNext();
+		}else if(channelReader != null){
+			return channelReader.readNext(allColumns);
+		}
+		return csvReader.readNext();
+	}
+	
+	protected void fillDown(InputLine currentLine){
+		//fill down the leading empty hierarchy columns from the previous line
+		for(int hierarchyColumn:hierarchyColumns){
+			if(!currentLine.hasColumn(hierarchyColumn) || currentLine.getValue(hierarchyColumn).length() > 0){
+				return;
+			}
+			if(previousLine.hasColumn(hierarchyColumn) && previousLine.getValue(hierarchyColumn).length() > 0){
+				currentLine.setValue(hierarchyColumn, previousLine.getValue(hierarchyColumn));
+			}else{
+				//warning: previous line is empty
+				hierarchyGenerator.diagnostics.report(Diagnostics.Category.FILLDOWN, hierarchyColumn, currentLine.getLineNumber(), null);
+			}
+		}
+	}
+	
+	//parses the lines on its own thread, it waits while the queue is full
+	protected class LineQueue implements Runnable {
+		protected final BlockingQueue<String[][]> batches;
+		protected final Thread thread;
+		protected volatile Throwable failure;
+		protected String[][] batch;
+		protected int batchIndex;
+		
+		protected LineQueue() {
+			batches = new ArrayBlockingQueue<String[][]>(queuedBatches);
+			thread = new Thread(this, "HierarchyGenerator reading of the input");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		@Override
+		public void run() {
+			try{
+				String[][] nextBatch = new String[batchSize][];
+				int size = 0;
+				String[] values = parseValues(settings.firstRowAsColumnNames);
+				while(values != null){
+					nextBatch[size++] = values;
+					if(size == batchSize){
+						batches.put(nextBatch);
+						nextBatch = new String[batchSize][];
+						size = 0;
+					}
+					values = parseValues(false);
+				}
+				if(size > 0){
+					batches.put(Arrays.copyOf(nextBatch, size));
+				}
+			}catch(InterruptedException e){
+				//closed before all lines were taken
+				return;
+			}catch(IOException e){
+				failure = e;
+			}catch(RuntimeException e){
+				failure = e;
+			}catch(Error e){
+				failure = e;
+			}
+			try{
+				batches.put(end);
+			}catch(InterruptedException e){
+				//closed
+			}
+		}
+		
+		protected String[] readNext() throws IOException{
+			while(batch == null || batchIndex == batch.length){
+				if(batch == end){
+					return null;
+				}
+				try{
+					batch = batches.take();
+				}catch(InterruptedException e){
+					throw new InterruptedIOException("Interrupted while reading the input.");
+				}
+				batchIndex = 0;
+				if(batch == end){
+					checkFailure();
+					return null;
+				}
+			}
+			return batch[batchIndex++];
+		}
+		
+		protected void checkFailure() throws IOException{
+			if(failure instanceof IOException){
+				throw (IOException)failure;
+			}else if(failure instanceof RuntimeException){
+				throw (RuntimeException)failure;
+			}else if(failure instanceof Error){
+				throw (Error)failure;
+			}
+		}
+		
+		//stops the thread if not all lines were taken
+		protected void close() throws IOException{
+			thread.interrupt();
+			try{
+				thread.join();
+			}catch(InterruptedException e){
+				throw new InterruptedIOException("Interrupted while reading the input.");
+			}
+		}
+	}
+	
+	public int getLineCount() {
+		return lineCount;
+	}
+}
@@ -0,0 +1,32 @@
+package org.gfbio.terminologyServer.tools;
+
+/**
+ * Keeps the input lines, the nodes only keep the indices of their lines.
+ * Lines are only added by the thread that reads the input, after the tree is built the store is only read.
+ * The columns are numbered as entered by the user with the first column having the index 1!
+ */
+public abstract class LineStore {
+
+	//returns the index of the line in the store
+	public abstract int add(InputLine line);
+
+	public abstract int size();
+
+	public abstract int getLineNumber(int line);
+
+	public abstract boolean hasColumn(int line, int column);
+
+	public abstract String getValue(int line, int column);
+
+	public abstract void setValue(int line, int column, String value);
+
+	//called when the tree is built, afterwards only the property columns are read
+	public void compact(){
+	}
+
+	//estimated heap bytes of the line structures, without the strings of the values
+	public abstract long estimateLineBytes();
+
+	//estimated heap bytes of the strings of the values, without the non empty hierarchy values, they are the names of the nodes
+	public abstract long estimateValueBytes();
+}
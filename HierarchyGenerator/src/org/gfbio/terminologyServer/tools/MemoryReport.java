@@ -0,0 +1,126 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Estimates the heap used by the tree and the lines in the current layout and in the former layout
+ * (TreeMap and Vector of the child names and a LinkedList of String[] lines with the line number as first value per node).
+ * The former layout of the lines is counted while they are read, the current layout is estimated by the LineStore.
+ * The sizes are those of a 64 bit JVM with compressed references and 8 byte alignment, strings are counted with one byte per Latin-1 character.
+ */
+public class MemoryReport {
+	protected static final int objectHeader = 12;
+	protected static final int arrayHeader = 16;
+	protected static final int reference = 4;
+
+	protected final HierarchyGenerator hierarchyGenerator;
+	protected final LineStore lineStore;
+
+	protected long nodes;
+	protected long parentNodes;
+	protected long nodesWithLines;
+	protected Set<String> names;
+
+	protected long oldNodeBytes;
+	protected long oldChildIndexBytes;
+	protected long oldLineListBytes;
+	protected long oldLineBytes;
+	protected long oldValueBytes;
+	protected long newNodeBytes;
+	protected long newChildIndexBytes;
+	protected long newLineListBytes;
+
+	public MemoryReport(HierarchyGenerator hierarchyGenerator) {
+		this.hierarchyGenerator = hierarchyGenerator;
+		this.lineStore = hierarchyGenerator.lineStore;
+	}
+
+	//the former layout kept every line as String[] with the line number as additional string
+	public void addLine(InputLine line){
+		oldLineBytes += array(line.values.length+1) + string(Integer.toString(line.lineNumber));
+		for(String value:line.values){
+			oldValueBytes += string(value);
+		}
+	}
+
+	public void print(HierarchyNode rootNode){
+		names = new HashSet<String>();
+		addNode(rootNode);
+
+		long newLineBytes = lineStore.estimateLineBytes();
+		//the non empty hierarchy values are the names of the nodes
+		long newValueBytes = lineStore.estimateValueBytes();
+		for(String name:names){
+			newValueBytes += string(name);
+		}
+
+		long oldTotal = oldNodeBytes+oldChildIndexBytes+oldLineListBytes+oldLineBytes+oldValueBytes;
+		long newTotal = newNodeBytes+newChildIndexBytes+newLineListBytes+newLineBytes+newValueBytes;
+		System.out.println("Memory report: "+nodes+" nodes, "+parentNodes+" with children, "+nodesWithLines+" with lines, "+lineStore.size()+" lines, "+names.size()+" distinct names (estimated bytes)");
+		System.out.println(String.format("%-16s%16s%16s", "", "former layout", "current layout"));
+		printRow("nodes", oldNodeBytes, newNodeBytes);
+		printRow("child index", oldChildIndexBytes, newChildIndexBytes);
+		printRow("line lists", oldLineListBytes, newLineListBytes);
+		printRow("lines", oldLineBytes, newLineBytes);
+		printRow("values", oldValueBytes, newValueBytes);
+		printRow("total", oldTotal, newTotal);
+		names = null;
+	}
+
+	protected void printRow(String label, long oldBytes, long newBytes){
+		System.out.println(String.format("%-16s%16d%16d", label, oldBytes, newBytes));
+	}
+
+	protected void addNode(HierarchyNode node){
+		nodes++;
+		names.add(node.getName());
+		//former: 6 references, 2 ints and a boolean, now: 5 references, 5 ints and a boolean
+		oldNodeBytes += align(objectHeader + 6*reference + 2*4 + 1);
+		newNodeBytes += align(objectHeader + 5*reference + 5*4 + 1);
+
+		int childNodeCount = node.getChildNodeCount();
+		if(childNodeCount > 0){
+			parentNodes++;
+			//TreeMap with one entry per child and a Vector of the names with a capacity of 10 that doubles
+			int vectorCapacity = 10;
+			while(vectorCapacity < childNodeCount){
+				vectorCapacity *= 2;
+			}
+			oldChildIndexBytes += align(objectHeader + 7*reference + 2*4) + childNodeCount*align(objectHeader + 5*reference + 1);
+			oldChildIndexBytes += align(objectHeader + reference + 3*4) + array(vectorCapacity);
+			newChildIndexBytes += array(childNodeCount);
+		}
+
+		int lineCount = node.getLineCount();
+		if(lineCount > 0){
+			nodesWithLines++;
+			//LinkedList with one node per line
+			oldLineListBytes += align(objectHeader + 2*reference + 2*4) + lineCount*align(objectHeader + 3*reference);
+			newLineListBytes += align(arrayHeader + 4*lineCount);
+		}
+
+		for(int childIndex = 0; childIndex < childNodeCount; childIndex++){
+			addNode(node.getChildNode(childIndex));
+		}
+	}
+
+	protected static long string(String value){
+		int bytesPerCharacter = 1;
+		for(int index = 0; index < value.length(); index++){
+			if(value.charAt(index) > 0xFF){
+				bytesPerCharacter = 2;
+				break;
+			}
+		}
+		return align(objectHeader + reference + 4 + 2) + align(arrayHeader + value.length()*bytesPerCharacter);
+	}
+
+	protected static long array(int length){
+		return align(arrayHeader + length*reference);
+	}
+
+	protected static long align(long bytes){
+		return (bytes + 7) & ~7L;
+	}
+}
@@ -0,0 +1,51 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Allocates the name based ids: the name itself or, if it is already taken, name_2, name_3 etc.
+ * The next suffix to try is kept per name, so repeated names don't probe all the suffixes from 2 again.
+ */
+public class NameIdAllocator {
+	protected final Set<String> usedIds = new HashSet<String>();
+	//mutable counter per name, all suffixes below it are taken
+	protected final Map<String, int[]> nextSuffixes = new HashMap<String, int[]>();
+	//names that were already taken, see RunReport
+	protected int collisionCount;
+	
+	public String allocate(String name){
+		if(usedIds.add(name)){
+			return name;
+		}
+		collisionCount++;
+		int[] nextSuffix = nextSuffixes.get(name);
+		if(nextSuffix == null){
+			nextSuffix = new int[]{2};
+			nextSuffixes.put(name, nextSuffix);
+		}
+		StringBuilder replacementId = new StringBuilder(name.length()+8).append(name).append('_');
+		int prefixLength = replacementId.length();
+		int suffix = nextSuffix[0];
+		String id = replacementId.append(suffix).toString();
+		//the id can still be taken by a name that looks like a replacement id, e.g. a concept called name_2
+		while(!usedIds.add(id)){
+			suffix++;
+			replacementId.setLength(prefixLength);
+			id = replacementId.append(suffix).toString();
+		}
+		nextSuffix[0] = suffix+1;
+		return id;
+	}
+	
+	public int getCollisionCount(){
+		return collisionCount;
+	}
+	
+	//marks an id of a previous run as taken, see IncrementalState
+	public void reserve(String id){
+		usedIds.add(id);
+	}
+}
@@ -0,0 +1,144 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.gfbio.terminologyServer.tools.template.Template;
+
+/**
+ * Writes the element block of a node with the compiled templates directly to the output.
+ * A renderer keeps the state of the element that is currently written and must not be shared between threads.
+ */
+public class NodeRenderer implements Template.Context {
+	protected final HierarchyGenerator hierarchyGenerator;
+	protected final HierarchySettings settings;
+	protected final LineStore lineStore;
+	
+	protected HierarchyNode parentNode;
+	protected HierarchyNode node;
+	protected HierarchyNode currentChildNode;
+	protected int currentLine;
+	protected int currentPropertyColumn;
+	
+	public NodeRenderer(HierarchyGenerator hierarchyGenerator) {
+		this(hierarchyGenerator, hierarchyGenerator.settings);
+	}
+	
+	public NodeRenderer(HierarchyGenerator hierarchyGenerator, HierarchySettings settings) {
+		this.hierarchyGenerator = hierarchyGenerator;
+		this.settings = settings;
+		this.lineStore = hierarchyGenerator.lineStore;
+	}
+	
+	public void render(HierarchyNode parentNode, HierarchyNode node, Writer out) throws IOException{
+		//column specific template, if not found the default template
+		Template elementTemplate = settings.getElementTemplate(node.columnIndex);
+		if(elementTemplate == null){
+			hierarchyGenerator.diagnostics.report(Diagnostics.Category.MISSING_ELEMENT_TEMPLATE, node.columnIndex, -1, node);
+			return;
+		}
+		this.parentNode = parentNode;
+		this.node = node;
+		elementTemplate.render(out, this);
+		out.write('\n');
+		this.parentNode = null;
+		this.node = null;
+	}
+	
+	@Override
+	public void writePlaceholder(int placeholder, Writer out) throws IOException {
+		switch(placeholder){
+		case Template.ID:
+			out.write(node.id);
+			break;
+		case Template.NAME:
+			out.write(node.name);
+			break;
+		case Template.RELATIONS:
+			writeRelations(out);
+			break;
+		case Template.PROPERTIES:
+			writeProperties(out);
+			break;
+		case Template.PARENT:
+			out.write(parentNode.id);
+			break;
+		case Template.CHILD:
+			out.write(currentChildNode.id);
+			break;
+		case Template.VALUE:
+			out.write(lineStore.getValue(currentLine, currentPropertyColumn));
+			break;
+		case Template.PROPERTY:
+			//if columnNames exist, replace <property> place holder with column name
+			String propertyKey = hierarchyGenerator.getColumnName(currentPropertyColumn);
+			out.write(propertyKey != null ? propertyKey : "<property>");
+			break;
+		}
+	}
+	
+	@Override
+	public String getColumnValue(int column) {
+		if(settings.isPropertyColumn(column) && lineStore.hasColumn(currentLine, column)){
+			return lineStore.getValue(currentLine, column);
+		}
+		return null;
+	}
+	
+	protected void writeRelations(Writer out) throws IOException{
+		if(settings.showBroaderReference && parentNode.level >= 0){
+			Template broaderReferenceTemplate = settings.getBroaderReferenceTemplate(node.columnIndex);
+			if(broaderReferenceTemplate != null){
+				broaderReferenceTemplate.render(out, this);
+				out.write('\n');
+			}else{
+				hierarchyGenerator.diagnostics.report(Diagnostics.Category.MISSING_BROADER_REFERENCE_TEMPLATE, node.columnIndex, -1, node);
+			}
+		}
+		if(settings.showNarrowerReference && node.getChildNodeCount() > 0){
+			Template narrowerReferenceTemplate = settings.getNarrowerReferenceTemplate(node.columnIndex);
+			if(narrowerReferenceTemplate != null){
+				//the references are sorted by name
+				for(HierarchyNode childNode:node.getChildNodesByName()){
+					currentChildNode = childNode;
+					narrowerReferenceTemplate.render(out, this);
+					out.write('\n');
+				}
+				currentChildNode = null;
+			}else{
+				hierarchyGenerator.diagnostics.report(Diagnostics.Category.MISSING_NARROWER_REFERENCE_TEMPLATE, node.columnIndex, -1, node);
+			}
+		}
+	}
+	
+	protected void writeProperties(Writer out) throws IOException{
+		for(int lineIndex = 0; lineIndex < node.getLineCount(); lineIndex++){
+			int line = node.getLine(lineIndex);
+			for(int propertyColumn:settings.propertyColumns){
+				if(lineStore.hasColumn(line, propertyColumn)){
+					//property template specific for this property, for this element or the default property template
+					Template propertyTemplate = settings.getPropertyTemplate(node.columnIndex, propertyColumn);
+					if(propertyTemplate == null){
+						hierarchyGenerator.diagnostics.report(Diagnostics.Category.MISSING_PROPERTY_TEMPLATE, propertyColumn, lineStore.getLineNumber(line), node);
+					}
+					String propertyValue = lineStore.getValue(line, propertyColumn);
+					if(!propertyValue.equals("")){
+						if(propertyTemplate != null){
+							//a template consisting of a single blank suppresses the property
+							if(propertyTemplate.isBlank()){
+								continue;
+							}
+							currentLine = line;
+							currentPropertyColumn = propertyColumn;
+							propertyTemplate.render(out, this);
+						}
+						out.write('\n');
+					}
+				}else{
+					//warning: can not read column
+					hierarchyGenerator.diagnostics.report(Diagnostics.Category.MISSING_PROPERTY_COLUMN, propertyColumn, lineStore.getLineNumber(line), node);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Looks up the elements of an output file in its outputIndexFile, see OutputIndexWriter for the format.
+ * The index file is memory mapped, an id is found with a binary search in the id section and the entries are read by their position,
+ * so every lookup takes O(log n) without reading the output file. The entries are numbered in the order of the output,
+ * the children of a node follow each other, so the elements of the children of a node are one range of bytes in the output file.
+ * The lookups only read the mapped index and can be used from several threads.
+ */
+public class OutputIndex {
+	protected static final Charset utf8 = Charset.forName("UTF-8");
+
+	protected final int size;
+	protected final int rootChildCount;
+	protected final ByteBuffer ids;
+	protected final ByteBuffer entries;
+	protected final ByteBuffer strings;
+
+	public OutputIndex(File indexFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+		try{
+			FileChannel channel = file.getChannel();
+			if(channel.size() < OutputIndexWriter.headerBytes){
+				throw new IOException("Output index '"+indexFile.getName()+"' is too short.");
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, OutputIndexWriter.headerBytes);
+			if(header.getInt(0) != OutputIndexWriter.magic || header.getInt(4) != OutputIndexWriter.version){
+				throw new IOException("File '"+indexFile.getName()+"' is not an output index of version "+OutputIndexWriter.version+".");
+			}
+			size = header.getInt(8);
+			rootChildCount = header.getInt(12);
+			long idsStart = OutputIndexWriter.headerBytes;
+			long entriesStart = idsStart+(long)size*OutputIndexWriter.idBytes;
+			long stringsStart = entriesStart+(long)size*OutputIndexWriter.entryBytes;
+			if(channel.size() < stringsStart){
+				throw new IOException("Output index '"+indexFile.getName()+"' is too short.");
+			}
+			ids = map(channel, idsStart, entriesStart-idsStart, indexFile);
+			entries = map(channel, entriesStart, stringsStart-entriesStart, indexFile);
+			strings = map(channel, stringsStart, channel.size()-stringsStart, indexFile);
+		}finally{
+			//the mapped buffers stay valid
+			file.close();
+		}
+	}
+
+	protected static ByteBuffer map(FileChannel channel, long start, long length, File indexFile) throws IOException{
+		if(length > Integer.MAX_VALUE){
+			throw new IOException("Output index '"+indexFile.getName()+"' is too large to be mapped.");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+	}
+
+	//the number of elements
+	public int size() {
+		return size;
+	}
+
+	//the children of the root node are the entries 0 to getRootChildCount()-1
+	public int getRootChildCount() {
+		return rootChildCount;
+	}
+
+	//the position of the element with the id or -1
+	public int find(String id){
+		byte[] key = id.getBytes(utf8);
+		int low = 0;
+		int high = size-1;
+		while(low <= high){
+			int middle = (low+high) >>> 1;
+			int comparison = compareId(middle, key);
+			if(comparison < 0){
+				low = middle+1;
+			}else if(comparison > 0){
+				high = middle-1;
+			}else{
+				return ids.getInt(middle*OutputIndexWriter.idBytes+8);
+			}
+		}
+		return -1;
+	}
+
+	//compares the id at the position in the id section with the key byte by byte, unsigned
+	protected int compareId(int idPosition, byte[] key){
+		long start = getStringOffset(idPosition);
+		int length = (int)(getStringOffset(idPosition+1)-start);
+		int commonLength = Math.min(length, key.length);
+		for(int index = 0; index < commonLength; index++){
+			int comparison = Integer.compare(strings.get((int)start+index) & 0xFF, key[index] & 0xFF);
+			if(comparison != 0){
+				return comparison;
+			}
+		}
+		return Integer.compare(length, key.length);
+	}
+
+	protected long getStringOffset(int idPosition){
+		return idPosition == size ? strings.capacity() : ids.getLong(idPosition*OutputIndexWriter.idBytes);
+	}
+
+	public String getId(int entry){
+		int idPosition = getEntryInt(entry, 24);
+		int start = (int)getStringOffset(idPosition);
+		byte[] id = new byte[(int)getStringOffset(idPosition+1)-start];
+		//a duplicate, so that the lookups of other threads are not disturbed
+		ByteBuffer idBytes = strings.duplicate();
+		idBytes.position(start);
+		idBytes.get(id);
+		return new String(id, utf8);
+	}
+
+	//the byte offset of the element in the output file
+	public long getOffset(int entry){
+		return entries.getLong(entry*OutputIndexWriter.entryBytes);
+	}
+
+	//the number of bytes of the element, with its line break
+	public int getLength(int entry){
+		return getEntryInt(entry, 8);
+	}
+
+	//the position of the parent, -1 for the children of the root node
+	public int getParent(int entry){
+		return getEntryInt(entry, 12);
+	}
+
+	//the position of the first child, -1 if the element has no children
+	public int getFirstChild(int entry){
+		return getEntryInt(entry, 16);
+	}
+
+	public int getChildCount(int entry){
+		return getEntryInt(entry, 20);
+	}
+
+	//the byte offset of the elements of the children in the output file, -1 if the element has no children
+	public long getChildrenOffset(int entry){
+		int firstChild = getFirstChild(entry);
+		return firstChild < 0 ? -1 : getOffset(firstChild);
+	}
+
+	//the number of bytes of the elements of all children
+	public long getChildrenLength(int entry){
+		int firstChild = getFirstChild(entry);
+		if(firstChild < 0){
+			return 0;
+		}
+		int lastChild = firstChild+getChildCount(entry)-1;
+		return getOffset(lastChild)+getLength(lastChild)-getOffset(firstChild);
+	}
+
+	//reads the element from the uncompressed output file
+	public String readElement(FileChannel output, int entry) throws IOException{
+		ByteBuffer element = ByteBuffer.allocate(getLength(entry));
+		long offset = getOffset(entry);
+		while(element.hasRemaining()){
+			if(output.read(element, offset+element.position()) < 0){
+				throw new IOException("Output file ends before the element '"+getId(entry)+"'.");
+			}
+		}
+		return new String(element.array(), utf8);
+	}
+
+	protected int getEntryInt(int entry, int fieldOffset){
+		return entries.getInt(entry*OutputIndexWriter.entryBytes+fieldOffset);
+	}
+}
@@ -0,0 +1,324 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Comparator;
+
+import org.gfbio.terminologyServer.tools.util.CountingOutputStream;
+import org.gfbio.terminologyServer.tools.util.ExternalSorter;
+
+/**
+ * Writes the outputIndexFile: the byte offset and length of the element of every node in the output file, the position of its parent
+ * and the range of its children, so single elements can be read without reading the output file, see OutputIndex.
+ * The entries are added in the order of the output, where the children of a node follow each other. Sorted by id they give the id section,
+ * the children of a parent are joined with it by its id. The entries are kept in sorted runs like with externalBuild,
+ * with the same memory and directory, so the index does not need the nodes in the memory.
+ *
+ * The file consists of (all numbers big endian):
+ * a header: the int 0x48474958 ("HGIX"), the version 1, the number of entries and the number of children of the root node, which are the first entries
+ * the id section: for every entry in the UTF-8 byte order of the ids the offset of the id in the strings (long) and the position of the entry (int)
+ * the entries in the order of the output: offset (long), length (int), position of the parent (int, -1 for the children of the root node),
+ * position of the first child (int, -1 without children), number of children (int), position in the id section (int)
+ * the strings: the UTF-8 bytes of the ids in the order of the id section
+ */
+public class OutputIndexWriter {
+	public static final int magic = 0x48474958;
+	public static final int version = 1;
+	public static final int headerBytes = 16;
+	public static final int idBytes = 12;
+	public static final int entryBytes = 28;
+
+	protected final File directory;
+	protected final long sorterMemory;
+	protected ExternalSorter<IndexEntry> entries;
+	protected ExternalSorter<ChildRange> childRanges;
+	protected int entryCount;
+	protected int rootChildCount;
+	protected File stringFile;
+
+	//the ids in the order of their UTF-8 bytes, which is the order of their code points
+	protected static final Comparator<String> idOrder = new Comparator<String>() {
+		@Override
+		public int compare(String id1, String id2) {
+			int length = Math.min(id1.length(), id2.length());
+			for(int index = 0; index < length; index++){
+				char character1 = id1.charAt(index);
+				char character2 = id2.charAt(index);
+				if(character1 != character2){
+					//surrogates encode code points above all other characters
+					return Integer.compare(codePointOrder(character1), codePointOrder(character2));
+				}
+			}
+			return Integer.compare(id1.length(), id2.length());
+		}
+	};
+
+	protected static final Comparator<IndexEntry> entryIdOrder = new Comparator<IndexEntry>() {
+		@Override
+		public int compare(IndexEntry entry1, IndexEntry entry2) {
+			int comparison = idOrder.compare(entry1.id, entry2.id);
+			return comparison != 0 ? comparison : Integer.compare(entry1.position, entry2.position);
+		}
+	};
+
+	protected static final Comparator<IndexEntry> positionOrder = new Comparator<IndexEntry>() {
+		@Override
+		public int compare(IndexEntry entry1, IndexEntry entry2) {
+			return Integer.compare(entry1.position, entry2.position);
+		}
+	};
+
+	protected static final Comparator<ChildRange> parentIdOrder = new Comparator<ChildRange>() {
+		@Override
+		public int compare(ChildRange range1, ChildRange range2) {
+			int comparison = idOrder.compare(range1.parentId, range2.parentId);
+			return comparison != 0 ? comparison : Integer.compare(range1.firstChild, range2.firstChild);
+		}
+	};
+
+	protected static final Comparator<ChildRange> firstChildOrder = new Comparator<ChildRange>() {
+		@Override
+		public int compare(ChildRange range1, ChildRange range2) {
+			return Integer.compare(range1.firstChild, range2.firstChild);
+		}
+	};
+
+	//the element of a node, only the fields of the current pass are set
+	protected static class IndexEntry {
+		protected String id;
+		protected int position;
+		protected long offset;
+		protected int length;
+		protected int childCount;
+		protected int firstChild = -1;
+		protected int idPosition;
+	}
+
+	//the children of a node, they follow each other in the output
+	protected static class ChildRange {
+		protected String parentId;
+		protected int parent = -1;
+		protected int firstChild;
+		protected int childCount;
+	}
+
+	public OutputIndexWriter(HierarchySettings settings) {
+		this.directory = settings.externalBuildDirectory.length() > 0 ? new File(settings.externalBuildDirectory) : null;
+		//two sorters are filled or read at the same time
+		this.sorterMemory = settings.externalBuildMemory/2;
+		entries = new ExternalSorter<IndexEntry>(entryIdOrder, new EntryCodec(), sorterMemory, directory, "hierarchy-index");
+		childRanges = new ExternalSorter<ChildRange>(parentIdOrder, new RangeCodec(), sorterMemory, directory, "hierarchy-index");
+	}
+
+	//adds the next element of the output, parentId is null for the children of the root node
+	public void add(String id, String parentId, int childIndex, int childCount, long offset, long length) throws IOException{
+		if(length > Integer.MAX_VALUE){
+			throw new IOException("Element '"+id+"' is too large for the output index: "+length+" bytes.");
+		}
+		IndexEntry entry = new IndexEntry();
+		entry.id = id;
+		entry.position = entryCount++;
+		entry.offset = offset;
+		entry.length = (int)length;
+		entry.childCount = childCount;
+		entries.add(entry);
+		if(parentId == null){
+			rootChildCount++;
+		}else if(childIndex == 0){
+			ChildRange range = new ChildRange();
+			range.parentId = parentId;
+			range.firstChild = entry.position;
+			childRanges.add(range);
+		}
+	}
+
+	//writes the index file and deletes the temporary files
+	public void write(File indexFile) throws IOException{
+		try{
+			ExternalSorter<IndexEntry> positions = new ExternalSorter<IndexEntry>(positionOrder, new EntryCodec(), sorterMemory, directory, "hierarchy-index");
+			ExternalSorter<ChildRange> parentRanges = new ExternalSorter<ChildRange>(firstChildOrder, new RangeCodec(), sorterMemory, directory, "hierarchy-index");
+			try{
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 65536));
+				try{
+					out.writeInt(magic);
+					out.writeInt(version);
+					out.writeInt(entryCount);
+					out.writeInt(rootChildCount);
+					writeIds(out, positions, parentRanges);
+					writeEntries(out, positions, parentRanges);
+					//the strings follow the entries
+					FileInputStream strings = new FileInputStream(stringFile);
+					try{
+						FileChannel channel = strings.getChannel();
+						WritableByteChannel outChannel = Channels.newChannel(out);
+						long position = 0;
+						long size = channel.size();
+						while(position < size){
+							position += channel.transferTo(position, size-position, outChannel);
+						}
+					}finally{
+						strings.close();
+					}
+				}finally{
+					out.close();
+				}
+			}finally{
+				positions.delete();
+				parentRanges.delete();
+			}
+		}finally{
+			delete();
+		}
+	}
+
+	//the entries in the order of the ids, every entry finds the children that have its id as parent id
+	protected void writeIds(DataOutputStream out, ExternalSorter<IndexEntry> positions, ExternalSorter<ChildRange> parentRanges) throws IOException{
+		stringFile = File.createTempFile("hierarchy-index", ".tmp", directory);
+		CountingOutputStream stringCount = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(stringFile), 65536));
+		ExternalSorter<IndexEntry>.Reader idEntries = entries.sorted();
+		ExternalSorter<ChildRange>.Reader ranges = childRanges.sorted();
+		try{
+			ChildRange range = ranges.next();
+			int idPosition = 0;
+			IndexEntry entry = idEntries.next();
+			while(entry != null){
+				//ranges without a parent entry can not be found
+				while(range != null && idOrder.compare(range.parentId, entry.id) < 0){
+					range = ranges.next();
+				}
+				if(range != null && range.parentId.equals(entry.id)){
+					entry.firstChild = range.firstChild;
+					range.parent = entry.position;
+					range.childCount = entry.childCount;
+					parentRanges.add(range);
+					range = ranges.next();
+				}
+				out.writeLong(stringCount.getCount());
+				out.writeInt(entry.position);
+				stringCount.write(entry.id.getBytes("UTF-8"));
+				entry.idPosition = idPosition++;
+				positions.add(entry);
+				entry = idEntries.next();
+			}
+		}finally{
+			idEntries.close();
+			ranges.close();
+			entries = null;
+			childRanges = null;
+			stringCount.close();
+		}
+	}
+
+	//the entries in the order of the output, with the parent of the range they are in
+	protected void writeEntries(DataOutputStream out, ExternalSorter<IndexEntry> positions, ExternalSorter<ChildRange> parentRanges) throws IOException{
+		ExternalSorter<IndexEntry>.Reader positionEntries = positions.sorted();
+		ExternalSorter<ChildRange>.Reader ranges = parentRanges.sorted();
+		try{
+			ChildRange range = ranges.next();
+			IndexEntry entry = positionEntries.next();
+			while(entry != null){
+				while(range != null && range.firstChild+range.childCount <= entry.position){
+					range = ranges.next();
+				}
+				out.writeLong(entry.offset);
+				out.writeInt(entry.length);
+				out.writeInt(range != null && range.firstChild <= entry.position ? range.parent : -1);
+				out.writeInt(entry.firstChild);
+				out.writeInt(entry.firstChild >= 0 ? entry.childCount : 0);
+				out.writeInt(entry.idPosition);
+				entry = positionEntries.next();
+			}
+		}finally{
+			positionEntries.close();
+			ranges.close();
+		}
+	}
+
+	//deletes the temporary files, also if the output failed
+	public void delete(){
+		if(entries != null){
+			entries.delete();
+			entries = null;
+		}
+		if(childRanges != null){
+			childRanges.delete();
+			childRanges = null;
+		}
+		if(stringFile != null){
+			stringFile.delete();
+			stringFile = null;
+		}
+	}
+
+	//the surrogates come after the other characters of the basic multilingual plane
+	protected static int codePointOrder(char character){
+		if(Character.isSurrogate(character)){
+			return character+0x2000;
+		}
+		return character >= 0xE000 ? character-0x800 : character;
+	}
+
+	protected static class EntryCodec implements ExternalSorter.Codec<IndexEntry> {
+		@Override
+		public void write(DataOutputStream out, IndexEntry entry) throws IOException {
+			ExternalSorter.writeString(out, entry.id);
+			out.writeInt(entry.position);
+			out.writeLong(entry.offset);
+			out.writeInt(entry.length);
+			out.writeInt(entry.childCount);
+			out.writeInt(entry.firstChild);
+			out.writeInt(entry.idPosition);
+		}
+
+		@Override
+		public IndexEntry read(DataInputStream in) throws IOException {
+			IndexEntry entry = new IndexEntry();
+			entry.id = ExternalSorter.readString(in);
+			entry.position = in.readInt();
+			entry.offset = in.readLong();
+			entry.length = in.readInt();
+			entry.childCount = in.readInt();
+			entry.firstChild = in.readInt();
+			entry.idPosition = in.readInt();
+			return entry;
+		}
+
+		@Override
+		public long estimateBytes(IndexEntry entry) {
+			return 48+ExternalSorter.estimateBytes(entry.id);
+		}
+	}
+
+	protected static class RangeCodec implements ExternalSorter.Codec<ChildRange> {
+		@Override
+		public void write(DataOutputStream out, ChildRange range) throws IOException {
+			ExternalSorter.writeString(out, range.parentId);
+			out.writeInt(range.parent);
+			out.writeInt(range.firstChild);
+			out.writeInt(range.childCount);
+		}
+
+		@Override
+		public ChildRange read(DataInputStream in) throws IOException {
+			ChildRange range = new ChildRange();
+			range.parentId = ExternalSorter.readString(in);
+			range.parent = in.readInt();
+			range.firstChild = in.readInt();
+			range.childCount = in.readInt();
+			return range;
+		}
+
+		@Override
+		public long estimateBytes(ChildRange range) {
+			return 32+ExternalSorter.estimateBytes(range.parentId);
+		}
+	}
+}
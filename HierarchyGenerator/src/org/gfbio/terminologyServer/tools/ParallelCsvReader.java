@@ -0,0 +1,212 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gfbio.terminologyServer.tools.util.FileRangeChannel;
+
+/**
+ * Parses the lines of an input file on readThreads threads and returns them in the order of the file.
+ * The file is split into chunks of about readChunkSize bytes that start after a \n. A quoted value can contain line breaks,
+ * so a chunk can start inside a CSV line: every chunk is first scanned by a CsvChunkScanner for all states in which it can start,
+ * then the states at the chunk starts are followed from the start of the file and every chunk is parsed from its first CSV line
+ * up to the first CSV line of the next chunk. Fill down and line numbers are left to the caller, which gets the lines in order.
+ * Only a few chunks are scanned and parsed ahead of the caller, so the lines of the whole file are never held at once.
+ */
+public class ParallelCsvReader {
+	protected static final int lineBreakSearchSize = 65536;
+
+	protected final FileChannel channel;
+	protected final HierarchySettings settings;
+	protected final long start;
+	protected final long size;
+	protected final long chunkSize;
+	protected final int chunkCount;
+	//chunks scanned or parsed ahead of the caller
+	protected final int aheadChunks;
+	protected final ExecutorService executor;
+
+	//scans by chunk, null before they are started and after they are used
+	protected final List<Future<Scan>> scans = new ArrayList<Future<Scan>>();
+	protected final Queue<Future<List<String[]>>> parsedChunks = new ArrayDeque<Future<List<String[]>>>();
+	//the next chunk to parse with the state at its start and the start of its first CSV line
+	protected int nextChunk;
+	protected int nextChunkState;
+	protected long nextLineStart;
+	protected boolean nextLineStartInField;
+	protected List<String[]> lines;
+	protected int lineIndex;
+
+	//the results of the CsvChunkScanner, without its buffer
+	protected static class Scan {
+		protected long chunkStart;
+		protected int[] endStates;
+		protected long[] lineStarts;
+		protected boolean[] lineStartInFields;
+	}
+
+	public ParallelCsvReader(FileChannel channel, HierarchySettings settings) throws IOException {
+		this.channel = channel;
+		this.settings = settings;
+		this.start = channel.position();
+		this.size = channel.size();
+		this.chunkSize = settings.readChunkSize;
+		this.chunkCount = (int)Math.max(1, (size-start+chunkSize-1)/chunkSize);
+		this.aheadChunks = settings.readThreads*2;
+		this.executor = Executors.newFixedThreadPool(settings.readThreads);
+		//the first chunk starts with a CSV line
+		nextChunk = 0;
+		nextChunkState = CsvChunkScanner.state(false, false);
+		nextLineStart = start;
+		nextLineStartInField = false;
+	}
+
+	//the values of the next CSV line, null at the end of the input
+	public String[] readNext() throws IOException{
+		while(lines == null || lineIndex == lines.size()){
+			while(parsedChunks.size() < aheadChunks && nextChunk < chunkCount){
+				parseNextChunk();
+			}
+			if(parsedChunks.isEmpty()){
+				return null;
+			}
+			lines = get(parsedChunks.poll());
+			lineIndex = 0;
+		}
+		String[] values = lines.get(lineIndex);
+		//the lines are kept by the caller as long as needed
+		lines.set(lineIndex++, null);
+		return values;
+	}
+
+	//starts the parsing of the next chunk up to the first CSV line of a later chunk, chunks that are completely inside a quoted value are parsed with it
+	protected void parseNextChunk() throws IOException{
+		final long lineStart = nextLineStart;
+		final boolean inField = nextLineStartInField;
+		final boolean firstChunk = nextChunk == 0;
+		int chunk = nextChunk;
+		int state = nextChunkState;
+		long lineEnd = size;
+		boolean lineEndInField = false;
+		while(true){
+			Scan scan = getScan(chunk);
+			state = scan.endStates[state];
+			scans.set(chunk, null);
+			chunk++;
+			if(chunk == chunkCount){
+				break;
+			}
+			Scan nextScan = getScan(chunk);
+			long chunkLineStart = nextScan.lineStarts[state];
+			if(chunkLineStart >= 0){
+				lineEnd = nextScan.chunkStart+chunkLineStart;
+				lineEndInField = nextScan.lineStartInFields[state];
+				break;
+			}
+		}
+		nextChunk = chunk;
+		nextChunkState = state;
+		nextLineStart = lineEnd;
+		nextLineStartInField = lineEndInField;
+		final long end = lineEnd;
+		parsedChunks.add(executor.submit(new Callable<List<String[]>>() {
+			@Override
+			public List<String[]> call() throws IOException {
+				return parse(lineStart, end, inField, firstChunk);
+			}
+		}));
+	}
+
+	protected List<String[]> parse(long lineStart, long lineEnd, boolean inField, boolean firstChunk) throws IOException{
+		CsvChannelReader csvReader = new CsvChannelReader(new FileRangeChannel(channel, lineStart, lineEnd), settings, inField);
+		List<String[]> parsedLines = new ArrayList<String[]>();
+		//the column names are the first line of the first chunk
+		String[] values = csvReader.readNext(firstChunk && settings.firstRowAsColumnNames);
+		while(values != null){
+			parsedLines.add(values);
+			values = csvReader.readNext(false);
+		}
+		return parsedLines;
+	}
+
+	//the scan of the chunk, the scans of the next chunks are started ahead
+	protected Scan getScan(int chunk) throws IOException{
+		while(scans.size() < Math.min(chunkCount, Math.max(chunk+1, nextChunk+aheadChunks))){
+			final int scanChunk = scans.size();
+			scans.add(executor.submit(new Callable<Scan>() {
+				@Override
+				public Scan call() throws IOException {
+					return scan(scanChunk);
+				}
+			}));
+		}
+		return get(scans.get(chunk));
+	}
+
+	protected Scan scan(int chunk) throws IOException{
+		Scan scan = new Scan();
+		scan.chunkStart = findChunkStart(chunk);
+		CsvChunkScanner scanner = new CsvChunkScanner(new FileRangeChannel(channel, scan.chunkStart, findChunkStart(chunk+1)), settings);
+		scanner.scan();
+		scan.endStates = scanner.endStates;
+		scan.lineStarts = scanner.lineStarts;
+		scan.lineStartInFields = scanner.lineStartInFields;
+		return scan;
+	}
+
+	//a chunk starts after the first \n from its nominal start on, the first chunk at the start of the input
+	protected long findChunkStart(int chunk) throws IOException{
+		if(chunk == 0){
+			return start;
+		}
+		if(chunk >= chunkCount){
+			return size;
+		}
+		long position = start+chunk*chunkSize-1;
+		ByteBuffer buffer = ByteBuffer.allocate(lineBreakSearchSize);
+		while(position < size){
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if(read < 0){
+				break;
+			}
+			for(int index = 0; index < read; index++){
+				if(buffer.get(index) == '\n'){
+					return position+index+1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	protected <T> T get(Future<T> future) throws IOException{
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while reading the input.");
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException){
+				throw (IOException)e.getCause();
+			}else if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	public void close(){
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,90 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the values and line numbers of all input lines in two arrays.
+ */
+public class RowLineStore extends LineStore {
+	protected final int[] hierarchyColumns;
+	protected String[][] values;
+	protected int[] lineNumbers;
+	protected int size;
+
+	public RowLineStore(HierarchySettings settings) {
+		hierarchyColumns = settings.hierarchyColumns;
+		values = new String[1024][];
+		lineNumbers = new int[1024];
+		size = 0;
+	}
+
+	@Override
+	public int add(InputLine line){
+		if(size == values.length){
+			int capacity = values.length + (values.length >> 1);
+			values = Arrays.copyOf(values, capacity);
+			lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+		}
+		values[size] = line.values;
+		lineNumbers[size] = line.lineNumber;
+		return size++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getLineNumber(int line){
+		return lineNumbers[line];
+	}
+
+	@Override
+	public boolean hasColumn(int line, int column){
+		return values[line].length >= column;
+	}
+
+	@Override
+	public String getValue(int line, int column){
+		return values[line][column-1];
+	}
+
+	@Override
+	public void setValue(int line, int column, String value){
+		values[line][column-1] = value;
+	}
+
+	@Override
+	public long estimateLineBytes() {
+		long bytes = 0;
+		for(int line = 0; line < size; line++){
+			//the array of the values, its slot in the store and the line number
+			bytes += MemoryReport.array(values[line].length) + MemoryReport.reference + 4;
+		}
+		return bytes;
+	}
+
+	@Override
+	public long estimateValueBytes() {
+		long bytes = 0;
+		for(int line = 0; line < size; line++){
+			for(int column = 1; column <= values[line].length; column++){
+				String value = values[line][column-1];
+				if(value.length() == 0 || !isHierarchyColumn(column)){
+					bytes += MemoryReport.string(value);
+				}
+			}
+		}
+		return bytes;
+	}
+
+	protected boolean isHierarchyColumn(int column){
+		for(int hierarchyColumn:hierarchyColumns){
+			if(hierarchyColumn == column){
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,301 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Measures the phases of a job (wall time, CPU time and allocated bytes) and writes them with the numbers of the run as JSON to the reportFile.
+ * With jmxReport the report is registered as MBean org.gfbio.terminologyServer.tools:type=RunReport,name=job-n while the job runs.
+ * The CPU time and the allocated bytes are those of the thread that runs the job, the build and render threads are not counted.
+ * The reading of the input is split into parsing, fill down and inserting the lines into the tree, only with wall time.
+ * The peak heap is the sum of the peaks of the heap memory pools since the JVM started. The peaks are process wide and are not reset,
+ * resetting them would change the peaks of the other jobs that run in the same JVM at the same time, e.g. with BatchRunner.
+ */
+public class RunReport implements RunReportMBean {
+	public static final String loadSnapshotPhase = "loadSnapshot";
+	public static final String loadIncrementalStatePhase = "loadIncrementalState";
+	public static final String readPhase = "read";
+	public static final String buildPhase = "build";
+	public static final String idPhase = "ids";
+	public static final String saveSnapshotPhase = "saveSnapshot";
+	public static final String comparePhase = "compare";
+	public static final String writePhase = "write";
+	public static final String saveIncrementalStatePhase = "saveIncrementalState";
+	//reading, building and writing together with streamingOutput
+	public static final String streamPhase = "stream";
+
+	public static final int parsePart = 0;
+	public static final int filldownPart = 1;
+	public static final int insertPart = 2;
+	protected static final String[] partNames = {"parse", "filldown", "insert"};
+
+	protected static final AtomicInteger jobCounter = new AtomicInteger();
+
+	protected final HierarchyGenerator hierarchyGenerator;
+	protected final File reportFile;
+	protected final ThreadMXBean threadBean;
+	protected final boolean cpuTime;
+	protected final boolean allocatedBytes;
+	protected final long startTime;
+	protected final long startNanos;
+	protected ObjectName objectName;
+
+	//the finished phases, read by JMX while the job runs
+	protected final List<Phase> phases = new ArrayList<Phase>();
+	protected volatile Phase currentPhase;
+	protected final long[] partNanos = new long[partNames.length];
+	protected final AtomicLong bytesWritten = new AtomicLong();
+	protected GenerationResult result;
+	protected int[] nodesPerLevel;
+	protected int nameIdCollisions;
+	protected long peakHeapBytes;
+
+	protected class Phase {
+		protected final String name;
+		protected final long startNanos;
+		protected final long startCpuNanos;
+		protected final long startAllocatedBytes;
+		protected long wallNanos;
+		protected long cpuNanos;
+		protected long allocatedBytes;
+
+		protected Phase(String name) {
+			this.name = name;
+			startNanos = System.nanoTime();
+			startCpuNanos = getCpuNanos();
+			startAllocatedBytes = getAllocatedBytes();
+		}
+
+		protected void end(){
+			wallNanos = System.nanoTime()-startNanos;
+			cpuNanos = startCpuNanos < 0 ? -1 : getCpuNanos()-startCpuNanos;
+			allocatedBytes = startAllocatedBytes < 0 ? -1 : getAllocatedBytes()-startAllocatedBytes;
+		}
+	}
+
+	public RunReport(HierarchyGenerator hierarchyGenerator) {
+		this.hierarchyGenerator = hierarchyGenerator;
+		HierarchySettings settings = hierarchyGenerator.settings;
+		reportFile = settings.reportFile.length() > 0 ? new File(settings.reportFile) : null;
+		threadBean = ManagementFactory.getThreadMXBean();
+		cpuTime = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+		allocatedBytes = threadBean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean)threadBean).isThreadAllocatedMemorySupported()
+				&& ((com.sun.management.ThreadMXBean)threadBean).isThreadAllocatedMemoryEnabled();
+		startTime = System.currentTimeMillis();
+		startNanos = System.nanoTime();
+		if(settings.jmxReport){
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				objectName = new ObjectName(getClass().getPackage().getName()+":type=RunReport,name=job-"+jobCounter.incrementAndGet());
+				server.registerMBean(this, objectName);
+			} catch (JMException e) {
+				System.out.println("Run report could not be registered for JMX: "+e.getMessage());
+				objectName = null;
+			}
+		}
+	}
+
+	protected long getCpuNanos(){
+		return cpuTime ? threadBean.getCurrentThreadCpuTime() : -1;
+	}
+
+	protected long getAllocatedBytes(){
+		return allocatedBytes ? ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+	}
+
+	//ends the current phase
+	public void startPhase(String name){
+		endPhase();
+		currentPhase = new Phase(name);
+	}
+
+	public void endPhase(){
+		Phase phase = currentPhase;
+		if(phase != null){
+			phase.end();
+			synchronized (phases) {
+				phases.add(phase);
+			}
+			currentPhase = null;
+		}
+	}
+
+	//adds the time since partStart to the part of the reading and returns the current time as start of the next part
+	public long addPart(int part, long partStart){
+		long now = System.nanoTime();
+		partNanos[part] += now-partStart;
+		return now;
+	}
+
+	public void addBytesWritten(long bytes){
+		bytesWritten.addAndGet(bytes);
+	}
+
+	//counts a node while the tree is streamed, the nodes of a streamed tree are not kept
+	public void countNode(int level){
+		if(nodesPerLevel == null){
+			nodesPerLevel = new int[hierarchyGenerator.settings.hierarchyColumns.length];
+		}
+		nodesPerLevel[level]++;
+	}
+
+	//ends the last phase, counts the nodes (unless they were counted with countNode) and writes the report file
+	public void finish(HierarchyNode rootNode, GenerationResult result){
+		endPhase();
+		this.result = result;
+		if(rootNode != null){
+			nodesPerLevel = new int[hierarchyGenerator.settings.hierarchyColumns.length];
+			countNodes(rootNode);
+		}else if(nodesPerLevel == null){
+			nodesPerLevel = new int[hierarchyGenerator.settings.hierarchyColumns.length];
+		}
+		nameIdCollisions = hierarchyGenerator.nameIdAllocator.getCollisionCount();
+		//of the whole JVM, including earlier and concurrent jobs
+		peakHeapBytes = 0;
+		for(MemoryPoolMXBean memoryPool:ManagementFactory.getMemoryPoolMXBeans()){
+			if(memoryPool.getType() == MemoryType.HEAP && memoryPool.getPeakUsage() != null){
+				peakHeapBytes += memoryPool.getPeakUsage().getUsed();
+			}
+		}
+		if(reportFile != null){
+			try{
+				Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), "UTF8"));
+				try{
+					out.write(getReport());
+					out.write('\n');
+				}finally{
+					out.close();
+				}
+			}catch(IOException e){
+				System.out.println("Report file '"+reportFile.getPath()+"' could not be written: "+e.getMessage());
+			}
+		}
+	}
+
+	protected void countNodes(HierarchyNode node){
+		for(int childIndex = 0; childIndex < node.getChildNodeCount(); childIndex++){
+			HierarchyNode childNode = node.getChildNode(childIndex);
+			nodesPerLevel[childNode.getLevel()]++;
+			countNodes(childNode);
+		}
+	}
+
+	//unregisters the MBean, also if the job failed
+	public void close(){
+		if(objectName != null){
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				//already unregistered
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public String getCurrentPhase() {
+		Phase phase = currentPhase;
+		return phase != null ? phase.name : null;
+	}
+
+	@Override
+	public long getElapsedMillis() {
+		return (System.nanoTime()-startNanos)/1000000;
+	}
+
+	@Override
+	public int getLinesRead() {
+		return hierarchyGenerator.lineStore.size();
+	}
+
+	@Override
+	public int getNodeCount() {
+		return hierarchyGenerator.nodeCount;
+	}
+
+	@Override
+	public String getReport() {
+		StringBuilder json = new StringBuilder("{\n");
+		json.append("  \"inputFile\": ").append(quote(hierarchyGenerator.settings.inputFile)).append(",\n");
+		json.append("  \"startTimeMillis\": ").append(startTime).append(",\n");
+		json.append("  \"durationMillis\": ").append(millis(System.nanoTime()-startNanos)).append(",\n");
+		long readNanos = 0;
+		synchronized (phases) {
+			json.append("  \"phases\": [");
+			for(int index = 0; index < phases.size(); index++){
+				Phase phase = phases.get(index);
+				if(phase.name.equals(readPhase)){
+					readNanos += phase.wallNanos;
+				}
+				json.append(index > 0 ? ",\n" : "\n");
+				json.append("    {\"name\": ").append(quote(phase.name));
+				json.append(", \"wallMillis\": ").append(millis(phase.wallNanos));
+				json.append(", \"cpuMillis\": ").append(phase.cpuNanos < 0 ? "null" : millis(phase.cpuNanos));
+				json.append(", \"allocatedBytes\": ").append(phase.allocatedBytes < 0 ? "null" : Long.toString(phase.allocatedBytes)).append('}');
+			}
+			json.append(phases.isEmpty() ? "],\n" : "\n  ],\n");
+		}
+		json.append("  \"readParts\": {");
+		for(int part = 0; part < partNames.length; part++){
+			json.append(part > 0 ? ", " : "").append('"').append(partNames[part]).append("Millis\": ").append(millis(partNanos[part]));
+		}
+		json.append("},\n");
+		int lines = getLinesRead();
+		json.append("  \"lines\": ").append(lines).append(",\n");
+		json.append("  \"linesPerSecond\": ").append(readNanos > 0 ? String.format(Locale.ROOT, "%.1f", lines*1e9/readNanos) : "null").append(",\n");
+		json.append("  \"nodes\": ").append(result != null ? result.nodeCount : Math.max(0, getNodeCount()-1)).append(",\n");
+		if(nodesPerLevel != null){
+			json.append("  \"nodesPerLevel\": [");
+			for(int level = 0; level < nodesPerLevel.length; level++){
+				json.append(level > 0 ? ", " : "").append(nodesPerLevel[level]);
+			}
+			json.append("],\n");
+			json.append("  \"nameIdCollisions\": ").append(nameIdCollisions).append(",\n");
+			json.append("  \"peakHeapBytes\": ").append(peakHeapBytes).append(",\n");
+		}
+		json.append("  \"problems\": ").append(hierarchyGenerator.diagnostics.getProblemCount()).append(",\n");
+		json.append("  \"bytesWritten\": ").append(bytesWritten.get()).append('\n');
+		json.append('}');
+		return json.toString();
+	}
+
+	protected static String millis(long nanos){
+		return String.format(Locale.ROOT, "%.3f", nanos/1e6);
+	}
+
+	protected static String quote(String value){
+		if(value == null){
+			return "null";
+		}
+		StringBuilder quoted = new StringBuilder(value.length()+2).append('"');
+		for(int index = 0; index < value.length(); index++){
+			char character = value.charAt(index);
+			if(character == '"' || character == '\\'){
+				quoted.append('\\').append(character);
+			}else if(character < 0x20){
+				quoted.append(String.format("\\u%04x", (int)character));
+			}else{
+				quoted.append(character);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+}
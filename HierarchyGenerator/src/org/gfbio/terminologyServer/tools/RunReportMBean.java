@@ -0,0 +1,18 @@
+package org.gfbio.terminologyServer.tools;
+
+/**
+ * The attributes of a running job, registered by the RunReport if jmxReport is set.
+ */
+public interface RunReportMBean {
+
+	public String getCurrentPhase();
+
+	public long getElapsedMillis();
+
+	public int getLinesRead();
+
+	public int getNodeCount();
+
+	//the report as JSON with the phases finished so far
+	public String getReport();
+}
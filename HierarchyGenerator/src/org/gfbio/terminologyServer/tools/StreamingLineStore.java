@@ -0,0 +1,80 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the input lines only until the element of their node is written, see StreamingTreeBuilder and ExternalTreeBuilder.
+ * The slots of released lines are used again for the next lines, so the store only grows with the lines of the nodes that are not written yet.
+ */
+public class StreamingLineStore extends RowLineStore {
+	protected int[] freeLines;
+	protected int freeLineCount;
+	//all lines added so far, also the released ones
+	protected int lineCount;
+
+	public StreamingLineStore(HierarchySettings settings) {
+		super(settings);
+		freeLines = new int[1024];
+		freeLineCount = 0;
+		lineCount = 0;
+	}
+
+	@Override
+	public int add(InputLine line){
+		lineCount++;
+		if(freeLineCount > 0){
+			int index = freeLines[--freeLineCount];
+			values[index] = line.values;
+			lineNumbers[index] = line.lineNumber;
+			return index;
+		}
+		return super.add(line);
+	}
+
+	//keeps a line again that was added and released before, e.g. read back from a file, it is not counted again
+	public int restore(InputLine line){
+		lineCount--;
+		return add(line);
+	}
+
+	//the line is not used anymore, its index can be returned by add() again
+	public void release(int line){
+		values[line] = null;
+		if(freeLineCount == freeLines.length){
+			freeLines = Arrays.copyOf(freeLines, freeLineCount*2);
+		}
+		freeLines[freeLineCount++] = line;
+	}
+
+	@Override
+	public int size() {
+		return lineCount;
+	}
+
+	@Override
+	public long estimateLineBytes() {
+		long bytes = 0;
+		for(int line = 0; line < super.size(); line++){
+			if(values[line] != null){
+				bytes += MemoryReport.array(values[line].length) + MemoryReport.reference + 4;
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	public long estimateValueBytes() {
+		long bytes = 0;
+		for(int line = 0; line < super.size(); line++){
+			if(values[line] != null){
+				for(int column = 1; column <= values[line].length; column++){
+					String value = values[line][column-1];
+					if(value.length() == 0 || !isHierarchyColumn(column)){
+						bytes += MemoryReport.string(value);
+					}
+				}
+			}
+		}
+		return bytes;
+	}
+}
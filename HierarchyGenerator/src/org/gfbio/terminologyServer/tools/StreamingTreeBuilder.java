@@ -0,0 +1,128 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Builds the hierarchy of an input that is sorted by the hierarchy columns and writes every element as soon as its subtree is complete.
+ * Only the nodes on the path of the current line are open, a line with another path closes and writes the open nodes below the common part,
+ * so the elements are written depth first, the children before their parent. The ids are assigned when a node is created, in the order of the input.
+ * A written node only keeps its name and id for the narrower references of its parent, its children and lines are released.
+ * A node that comes up again after it was written means that the input is not sorted, this is checked with the children of the open nodes.
+ * A name below one node has to come from the same hierarchy column in all lines: the TreeBuilder lets a line that reaches a node
+ * from a later column go on below it, which can not be done without the lines that follow, so such an input is rejected as well.
+ * The memory grows with the depth and the number of children per node, not with the input, apart from the used ids of the name based ids.
+ */
+public class StreamingTreeBuilder extends TreeBuilder {
+	protected final StreamingLineStore streamingLineStore;
+	protected final NodeRenderer nodeRenderer;
+	protected final Writer out;
+	//the path of the current line, the root node first
+	protected final HierarchyNode[] openNodes;
+	protected int openNodeCount;
+
+	//thrown through the readers of the input, the partial output can not be used
+	public static class StreamingInputException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public StreamingInputException(String message) {
+			super(message);
+		}
+	}
+
+	public StreamingTreeBuilder(HierarchyGenerator hierarchyGenerator, Writer out) {
+		super(hierarchyGenerator);
+		this.streamingLineStore = (StreamingLineStore)lineStore;
+		this.nodeRenderer = new NodeRenderer(hierarchyGenerator);
+		this.out = out;
+		//the names are not pooled, the written nodes are released
+		namePool = null;
+		openNodes = new HierarchyNode[hierarchyColumns.length+1];
+		openNodes[0] = rootNode;
+		openNodeCount = 1;
+	}
+
+	@Override
+	public void addLine(InputLine inputLine) throws IOException{
+		int line = lineStore.add(inputLine);
+		HierarchyNode currentNode = rootNode;
+		//the position of the current node in the open nodes
+		int depth = 0;
+		for(int level = 0; level < hierarchyColumns.length; level++){
+			int column = hierarchyColumns[level];
+			if(lineStore.hasColumn(line, column)){
+				String conceptName = lineStore.getValue(line, column);
+				if(!conceptName.equals("")){
+					depth++;
+					if(depth < openNodeCount && openNodes[depth].name.equals(conceptName)){
+						checkLevel(currentNode, openNodes[depth], level, inputLine.getLineNumber());
+						currentNode = openNodes[depth];
+					}else{
+						closeNodes(depth);
+						currentNode = createChildNode(currentNode, conceptName, column, level, inputLine.getLineNumber());
+						openNodes[depth] = currentNode;
+						openNodeCount = depth+1;
+					}
+				}
+				//lines without content for the current column remain with the current node for the next level
+			}else{
+				warnMissingColumn(line, column);
+			}
+		}
+		//the open nodes below the current node stay open, their lines can follow
+		if(currentNode == rootNode){
+			//the root node is not written
+			streamingLineStore.release(line);
+		}else{
+			currentNode.addLine(line);
+		}
+	}
+
+	protected HierarchyNode createChildNode(HierarchyNode parentNode, String conceptName, int childColumn, int childLevel, int lineNumber) throws IOException{
+		HierarchyNode writtenNode = parentNode.findChildNode(conceptName);
+		if(writtenNode != null){
+			checkLevel(parentNode, writtenNode, childLevel, lineNumber);
+			throw new StreamingInputException("Input file is not sorted by the hierarchy columns: '"+conceptName+"' below '"+parentNode.name+"' in line "+lineNumber
+					+" was already written, its lines must follow each other.");
+		}
+		HierarchyNode childNode = new HierarchyNode(conceptName, null, childColumn, childLevel);
+		parentNode.addChildNode(childNode);
+		childNode.setId(hierarchyGenerator.generateNewID(conceptName, parentNode, parentNode.getChildNodeCount()), hierarchyGenerator.nodeCount++);
+		if(hierarchyGenerator.runReport != null){
+			hierarchyGenerator.runReport.countNode(childLevel);
+		}
+		return childNode;
+	}
+
+	//a node is only the same node for a line with its name in the column of the node
+	protected void checkLevel(HierarchyNode parentNode, HierarchyNode node, int level, int lineNumber) throws IOException{
+		if(node.level != level){
+			throw new StreamingInputException("Input file can not be streamed: '"+node.name+"' below '"+parentNode.name+"' is in column "+hierarchyColumns[level]
+					+" in line "+lineNumber+" and in column "+node.columnIndex+" in an earlier line, a name below a term must always be in the same hierarchy column with "
+					+HierarchyGenerator.streamingOutputKey+".");
+		}
+	}
+
+	//writes and releases the open nodes from the given position on, the deepest first
+	protected void closeNodes(int depth) throws IOException{
+		for(int index = openNodeCount-1; index >= depth; index--){
+			HierarchyNode node = openNodes[index];
+			nodeRenderer.render(openNodes[index-1], node, out);
+			for(int lineIndex = 0; lineIndex < node.getLineCount(); lineIndex++){
+				streamingLineStore.release(node.getLine(lineIndex));
+			}
+			node.release();
+			openNodes[index] = null;
+		}
+		if(openNodeCount > depth){
+			openNodeCount = depth;
+		}
+	}
+
+	//writes the nodes that are still open at the end of the input
+	public HierarchyNode finish() throws IOException{
+		closeNodes(1);
+		rootNode.compact();
+		return rootNode;
+	}
+}
@@ -0,0 +1,268 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the hierarchy column by column like the first versions did: the first hierarchy column is distributed while the lines are read,
+ * every further column in one pass in build(). In the pass of a column the lines of every node whose level is not higher than the level
+ * of the previous column are moved to the child named by the column, a child that does not exist yet is created with the level of the column.
+ * So a node keeps the level of the first column it was found in, and a line that reaches an existing node of a lower level
+ * goes on with the same column below that node, e.g. a line ",A" reaches the node A of the line "A,B" and then its child B.
+ * Lines without content for the column remain with their node for the next pass.
+ * The ids are assigned afterwards level by level, in the order in which the nodes were created by the passes.
+ * With buildThreads larger than 1 the passes below the top level nodes run in parallel, one task for each top level node,
+ * the ids are still assigned afterwards in one thread, so they are the same as in a sequential build.
+ * The lines are kept in the LineStore, the node names are pooled while building and the hierarchy values of the lines
+ * are replaced by the pooled names, so equal names are only kept once.
+ */
+public class TreeBuilder {
+	protected final HierarchyGenerator hierarchyGenerator;
+	protected final int[] hierarchyColumns;
+	protected final LineStore lineStore;
+	protected final HierarchyNode rootNode;
+	protected final int buildThreads;
+	//equal names of different nodes share one string, only used while building
+	protected ConcurrentMap<String, String> namePool;
+	//the lines that reached a top level node and the pass in which they reached it, in the order of their arrival
+	protected Map<HierarchyNode, PendingLines> pendingLines;
+	
+	public TreeBuilder(HierarchyGenerator hierarchyGenerator) {
+		this.hierarchyGenerator = hierarchyGenerator;
+		this.hierarchyColumns = hierarchyGenerator.settings.hierarchyColumns;
+		this.lineStore = hierarchyGenerator.lineStore;
+		this.buildThreads = hierarchyGenerator.settings.buildThreads;
+		rootNode = new HierarchyNode(HierarchyGenerator.rootId, null, 0, -1);
+		rootNode.setId(HierarchyGenerator.rootId, hierarchyGenerator.nodeCount++);
+		namePool = new ConcurrentHashMap<String, String>();
+		pendingLines = new LinkedHashMap<HierarchyNode, PendingLines>();
+	}
+	
+	//the pass of the first hierarchy column, the passes of the other columns follow in build()
+	public void addLine(InputLine inputLine) throws IOException{
+		int line = lineStore.add(inputLine);
+		if(hierarchyGenerator.memoryReport != null){
+			hierarchyGenerator.memoryReport.addLine(inputLine);
+		}
+		//every hierarchy column of a line is read in exactly one pass, so the missing ones can be reported now
+		for(int level = 0; level < hierarchyColumns.length; level++){
+			if(!lineStore.hasColumn(line, hierarchyColumns[level])){
+				warnMissingColumn(line, hierarchyColumns[level]);
+			}
+		}
+		if(!moveToChildNode(rootNode, line, 0, -1)){
+			rootNode.addLine(line);
+		}
+	}
+	
+	//moves the line to the child of the node named by the column of the given level, returns false if the line has no content for the column
+	protected boolean moveToChildNode(HierarchyNode node, int line, int level, int pass){
+		int column = hierarchyColumns[level];
+		//check if index is not out of bound
+		if(!lineStore.hasColumn(line, column)){
+			return false;
+		}
+		String conceptName = lineStore.getValue(line, column);
+		if(conceptName.equals("")){
+			return false;
+		}
+		HierarchyNode childNode = findOrCreateChildNode(node, conceptName, column, level);
+		//the line keeps the pooled name instead of its own copy
+		lineStore.setValue(line, column, childNode.name);
+		if(node == rootNode){
+			//the passes below a top level node only see the lines that reached it in an earlier or the same pass
+			PendingLines topLevelNodeLines = pendingLines.get(childNode);
+			if(topLevelNodeLines == null){
+				topLevelNodeLines = new PendingLines(childNode);
+				pendingLines.put(childNode, topLevelNodeLines);
+			}
+			topLevelNodeLines.add(line, pass);
+		}else{
+			childNode.addLine(line);
+		}
+		return true;
+	}
+	
+	//the pass of the column after the given pass for the node and its descendants whose level is not higher than the pass
+	protected void processPass(HierarchyNode node, int pass){
+		processLines(node, pass);
+		if(node.level < pass){
+			//the children created in this pass have a higher level and are skipped
+			for(int childIndex = 0; childIndex < node.getChildNodeCount(); childIndex++){
+				HierarchyNode childNode = node.getChildNode(childIndex);
+				if(childNode.level <= pass){
+					processPass(childNode, pass);
+				}
+			}
+		}
+	}
+	
+	protected void processLines(HierarchyNode node, int pass){
+		int remainingLineCount = 0;
+		for(int lineIndex = 0; lineIndex < node.lineCount; lineIndex++){
+			int line = node.lines[lineIndex];
+			//lines without content for the column remain with the node for the next pass
+			if(!moveToChildNode(node, line, pass+1, pass)){
+				node.lines[remainingLineCount++] = line;
+			}
+		}
+		node.lineCount = remainingLineCount;
+	}
+	
+	protected HierarchyNode findOrCreateChildNode(HierarchyNode parentNode, String conceptName, int childColumn, int childLevel){
+		HierarchyNode childNode = parentNode.findChildNode(conceptName);
+		if(childNode == null){
+			String pooledName = namePool.putIfAbsent(conceptName, conceptName);
+			if(pooledName == null){
+				pooledName = conceptName;
+			}
+			//the id is assigned after the tree is complete, see build()
+			childNode = new HierarchyNode(pooledName, null, childColumn, childLevel);
+			parentNode.addChildNode(childNode);
+		}
+		return childNode;
+	}
+	
+	protected void warnMissingColumn(int line, int column){
+		//show warning: can not read column
+		hierarchyGenerator.diagnostics.report(Diagnostics.Category.MISSING_HIERARCHY_COLUMN, column, lineStore.getLineNumber(line), null);
+	}
+	
+	public HierarchyNode build() throws InterruptedException{
+		//the passes of the root node first, they only add lines to the top level nodes
+		for(int pass = 0; pass < hierarchyColumns.length-1; pass++){
+			processLines(rootNode, pass);
+		}
+		if(buildThreads > 1){
+			buildSubtreesInParallel();
+		}else{
+			for(PendingLines topLevelNodeLines:pendingLines.values()){
+				topLevelNodeLines.call();
+			}
+		}
+		pendingLines = null;
+		namePool = null;
+		lineStore.compact();
+		
+		//collect the parents of each level in tree order
+		List<List<HierarchyNode>> parentNodesByLevel = new ArrayList<List<HierarchyNode>>(hierarchyColumns.length);
+		for(int level = 0; level < hierarchyColumns.length; level++){
+			parentNodesByLevel.add(new ArrayList<HierarchyNode>());
+		}
+		collectParentNodes(rootNode, parentNodesByLevel);
+		
+		//assign the ids level by level, that is in the order in which the passes created the nodes
+		if(hierarchyGenerator.runReport != null){
+			hierarchyGenerator.runReport.startPhase(RunReport.idPhase);
+		}
+		for(int level = 0; level < hierarchyColumns.length; level++){
+			for(HierarchyNode parentNode:parentNodesByLevel.get(level)){
+				for(int childIndex = 0; childIndex < parentNode.getChildNodeCount(); childIndex++){
+					HierarchyNode childNode = parentNode.getChildNode(childIndex);
+					if(childNode.getLevel() == level){
+						if(hierarchyGenerator.incrementalState != null){
+							//keeps the ids of the previous run
+							hierarchyGenerator.incrementalState.assignId(parentNode, childNode, childIndex+1);
+						}else{
+							childNode.setId(hierarchyGenerator.generateNewID(childNode.getName(), parentNode, childIndex+1), hierarchyGenerator.nodeCount++);
+						}
+					}
+				}
+			}
+		}
+		return rootNode;
+	}
+	
+	//every top level node gets its own task, the tasks only change the subtree of their node
+	protected void buildSubtreesInParallel() throws InterruptedException{
+		ExecutorService executor = Executors.newFixedThreadPool(buildThreads);
+		try{
+			for(Future<Void> subtree:executor.invokeAll(pendingLines.values())){
+				try {
+					subtree.get();
+				} catch (ExecutionException e) {
+					if(e.getCause() instanceof RuntimeException){
+						throw (RuntimeException)e.getCause();
+					}
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+	
+	protected class PendingLines implements Callable<Void> {
+		protected final HierarchyNode topLevelNode;
+		protected int[] lines;
+		protected int[] passes;
+		protected int size;
+		
+		protected PendingLines(HierarchyNode topLevelNode) {
+			this.topLevelNode = topLevelNode;
+			lines = new int[4];
+			passes = new int[4];
+			size = 0;
+		}
+		
+		protected void add(int line, int pass){
+			if(size == lines.length){
+				lines = Arrays.copyOf(lines, size*2);
+				passes = Arrays.copyOf(passes, size*2);
+			}
+			lines[size] = line;
+			passes[size] = pass;
+			size++;
+		}
+		
+		//the passes below the top level node, a line only takes part from the pass in which it reached the node on
+		@Override
+		public Void call() {
+			int index = 0;
+			for(int pass = topLevelNode.level; pass < hierarchyColumns.length-1; pass++){
+				for(; index < size && passes[index] <= pass; index++){
+					topLevelNode.addLine(lines[index]);
+				}
+				processPass(topLevelNode, pass);
+			}
+			for(; index < size; index++){
+				topLevelNode.addLine(lines[index]);
+			}
+			lines = null;
+			passes = null;
+			return null;
+		}
+	}
+	
+	//the nodes that have children, grouped by their level, each level in tree order
+	//also compacts every node, no children or lines are added afterwards
+	protected void collectParentNodes(HierarchyNode node, List<List<HierarchyNode>> parentNodesByLevel){
+		node.compact();
+		if(node.getChildNodeCount() == 0){
+			return;
+		}
+		//the levels of the children are higher than the level of their parent and ascending in the order of creation
+		int previousChildLevel = -1;
+		for(int childIndex = 0; childIndex < node.getChildNodeCount(); childIndex++){
+			int childLevel = node.getChildNode(childIndex).getLevel();
+			if(childLevel != previousChildLevel){
+				parentNodesByLevel.get(childLevel).add(node);
+				previousChildLevel = childLevel;
+			}
+		}
+		for(int childIndex = 0; childIndex < node.getChildNodeCount(); childIndex++){
+			collectParentNodes(node.getChildNode(childIndex), parentNodesByLevel);
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package org.gfbio.terminologyServer.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Saves the built tree with its ids, the column names and the property values of the lines in a binary file,
+ * so that the output can be written again with other templates without reading the input and building the tree.
+ * A snapshot is only used if it was saved for the same input (SHA-256 of the file) and the same settings that change the tree.
+ *
+ * Layout: magic, version, key, column names, lines (line number, number of columns, property values),
+ * nodes in preorder (name, id, column, level, line indices, number of children).
+ * Strings are saved as their number of UTF-8 bytes (-1 for null) and the bytes.
+ */
+public class TreeSnapshot {
+	protected static final int magic = 0x48475331;
+	protected static final int version = 1;
+	protected static final Charset utf8 = Charset.forName("UTF-8");
+
+	protected final HierarchyGenerator hierarchyGenerator;
+	protected final HierarchySettings settings;
+	protected final File snapshotFile;
+	protected final File inputFile;
+	//the property columns without duplicates
+	protected final int[] propertyColumns;
+	protected String key;
+
+	//only used while a snapshot is loaded
+	protected MappedByteBuffer buffer;
+	protected byte[] stringBytes;
+	protected Map<String, String> namePool;
+
+	public TreeSnapshot(HierarchyGenerator hierarchyGenerator, File snapshotFile, File inputFile) {
+		this.hierarchyGenerator = hierarchyGenerator;
+		this.settings = hierarchyGenerator.settings;
+		this.snapshotFile = snapshotFile;
+		this.inputFile = inputFile;
+		int[] columns = new int[settings.propertyColumns.length];
+		int columnCount = 0;
+		for(int propertyColumn:settings.propertyColumns){
+			boolean duplicate = false;
+			for(int index = 0; index < columnCount; index++){
+				duplicate = duplicate || columns[index] == propertyColumn;
+			}
+			if(!duplicate){
+				columns[columnCount++] = propertyColumn;
+			}
+		}
+		propertyColumns = Arrays.copyOf(columns, columnCount);
+	}
+
+	//the checksum of the input and every setting that changes the tree or the kept lines
+	protected String getKey() throws IOException{
+		if(key == null){
+			StringBuilder keyBuilder = new StringBuilder();
+			keyBuilder.append(HierarchyGenerator.hierarchyColumnsKey).append('=').append(Arrays.toString(settings.hierarchyColumns)).append('\n');
+			keyBuilder.append(HierarchyGenerator.propertyColumnsKey).append('=').append(Arrays.toString(propertyColumns)).append('\n');
+			keyBuilder.append(HierarchyGenerator.separatorCharacterKey).append('=').append(settings.separatorCharacter).append('\n');
+			keyBuilder.append(HierarchyGenerator.quoteCharacterKey).append('=').append(settings.quoteCharacter).append('\n');
+			keyBuilder.append(HierarchyGenerator.filldownKey).append('=').append(settings.filldown).append('\n');
+			keyBuilder.append(HierarchyGenerator.firstRowAsColumnNamesKey).append('=').append(settings.firstRowAsColumnNames).append('\n');
+			keyBuilder.append(HierarchyGenerator.idTypeKey).append('=').append(settings.idType).append('\n');
+			keyBuilder.append(HierarchyGenerator.numericStartIdKey).append('=').append(settings.numericStartId).append('\n');
+			keyBuilder.append(HierarchyGenerator.inputCompressionKey).append('=').append(settings.inputCompression).append('\n');
+			keyBuilder.append("input=").append(inputFile.length()).append(':').append(checksum(inputFile));
+			key = keyBuilder.toString();
+		}
+		return key;
+	}
+
+	protected static String checksum(File file) throws IOException{
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		InputStream input = new FileInputStream(file);
+		try{
+			byte[] bytes = new byte[65536];
+			int length = input.read(bytes);
+			while(length >= 0){
+				digest.update(bytes, 0, length);
+				length = input.read(bytes);
+			}
+		}finally{
+			input.close();
+		}
+		StringBuilder checksum = new StringBuilder();
+		for(byte checksumByte:digest.digest()){
+			checksum.append(Integer.toHexString((checksumByte & 0xFF) | 0x100).substring(1));
+		}
+		return checksum.toString();
+	}
+
+	//returns the root node of the saved tree or null if there is no snapshot for this input and these settings
+	public HierarchyNode load() throws IOException{
+		if(!snapshotFile.isFile()){
+			return null;
+		}
+		if(snapshotFile.length() > Integer.MAX_VALUE){
+			System.out.println("Snapshot file '"+snapshotFile.getPath()+"' is too large to be mapped. The hierarchy is built from the input file.");
+			return null;
+		}
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+		try{
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		}finally{
+			file.close();
+		}
+		stringBytes = new byte[256];
+		try{
+			if(buffer.getInt() != magic || buffer.getInt() != version || !getKey().equals(readString())){
+				System.out.println("Snapshot file '"+snapshotFile.getPath()+"' was saved for another input, other settings or another version. The hierarchy is built from the input file.");
+				return null;
+			}
+			hierarchyGenerator.columnNames = readStrings();
+			readLines();
+			namePool = new HashMap<String, String>();
+			HierarchyNode rootNode = readNode();
+			rootNode.compact();
+			if(!buffer.hasRemaining()){
+				return rootNode;
+			}
+		} catch (RuntimeException e) {
+			//a damaged snapshot, e.g. a BufferUnderflowException, reported below
+		}finally{
+			buffer = null;
+			stringBytes = null;
+			namePool = null;
+		}
+		System.out.println("Snapshot file '"+snapshotFile.getPath()+"' is damaged. The hierarchy is built from the input file.");
+		//forget what was loaded so far
+		hierarchyGenerator.startJob();
+		return null;
+	}
+
+	protected void readLines(){
+		LineStore lineStore = hierarchyGenerator.lineStore;
+		int lineCount = buffer.getInt();
+		for(int line = 0; line < lineCount; line++){
+			int lineNumber = buffer.getInt();
+			//the other columns are not needed for the output
+			String[] values = new String[buffer.getInt()];
+			Arrays.fill(values, "");
+			for(int propertyColumn:propertyColumns){
+				if(values.length >= propertyColumn){
+					values[propertyColumn-1] = readString();
+				}
+			}
+			lineStore.add(new InputLine(lineNumber, values));
+		}
+		lineStore.compact();
+	}
+
+	protected HierarchyNode readNode(){
+		String name = readString();
+		String pooledName = namePool.get(name);
+		if(pooledName == null){
+			namePool.put(name, name);
+			pooledName = name;
+		}
+		String id = readString();
+		int columnIndex = buffer.getInt();
+		int level = buffer.getInt();
+		HierarchyNode node = new HierarchyNode(pooledName, null, columnIndex, level);
+		node.setId(id, hierarchyGenerator.nodeCount++);
+		int lineCount = buffer.getInt();
+		for(int line = 0; line < lineCount; line++){
+			node.addLine(buffer.getInt());
+		}
+		int childNodeCount = buffer.getInt();
+		for(int childIndex = 0; childIndex < childNodeCount; childIndex++){
+			HierarchyNode childNode = readNode();
+			childNode.compact();
+			//the children are saved in their final order
+			node.addChildNode(childNode);
+		}
+		return node;
+	}
+
+	protected String readString(){
+		int length = buffer.getInt();
+		if(length < 0){
+			return null;
+		}
+		if(length > stringBytes.length){
+			stringBytes = new byte[Math.max(length, stringBytes.length*2)];
+		}
+		buffer.get(stringBytes, 0, length);
+		return new String(stringBytes, 0, length, utf8);
+	}
+
+	protected String[] readStrings(){
+		int count = buffer.getInt();
+		if(count < 0){
+			return null;
+		}
+		String[] strings = new String[count];
+		for(int index = 0; index < count; index++){
+			strings[index] = readString();
+		}
+		return strings;
+	}
+
+	//saves the tree after it was built, a snapshot that can not be saved is only reported
+	public void save(HierarchyNode rootNode){
+		File temporaryFile = new File(snapshotFile.getPath()+".tmp");
+		try{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 65536));
+			try{
+				out.writeInt(magic);
+				out.writeInt(version);
+				writeString(out, getKey());
+				writeStrings(out, hierarchyGenerator.columnNames);
+				writeLines(out);
+				writeNode(out, rootNode);
+			}finally{
+				out.close();
+			}
+			//replace the previous snapshot only with a complete one
+			if((snapshotFile.exists() && !snapshotFile.delete()) || !temporaryFile.renameTo(snapshotFile)){
+				throw new IOException("could not replace the snapshot file");
+			}
+		}catch(IOException e){
+			temporaryFile.delete();
+			System.out.println("Snapshot file '"+snapshotFile.getPath()+"' could not be saved: "+e.getMessage());
+		}
+	}
+
+	protected void writeLines(DataOutputStream out) throws IOException{
+		LineStore lineStore = hierarchyGenerator.lineStore;
+		out.writeInt(lineStore.size());
+		for(int line = 0; line < lineStore.size(); line++){
+			out.writeInt(lineStore.getLineNumber(line));
+			//the number of columns is only known up to the last property column the line has
+			int columnCount = 0;
+			for(int propertyColumn:propertyColumns){
+				if(lineStore.hasColumn(line, propertyColumn)){
+					columnCount = Math.max(columnCount, propertyColumn);
+				}
+			}
+			out.writeInt(columnCount);
+			for(int propertyColumn:propertyColumns){
+				if(columnCount >= propertyColumn){
+					writeString(out, lineStore.getValue(line, propertyColumn));
+				}
+			}
+		}
+	}
+
+	protected void writeNode(DataOutputStream out, HierarchyNode node) throws IOException{
+		writeString(out, node.name);
+		writeString(out, node.id);
+		out.writeInt(node.columnIndex);
+		out.writeInt(node.level);
+		out.writeInt(node.getLineCount());
+		for(int lineIndex = 0; lineIndex < node.getLineCount(); lineIndex++){
+			out.writeInt(node.getLine(lineIndex));
+		}
+		out.writeInt(node.getChildNodeCount());
+		for(int childIndex = 0; childIndex < node.getChildNodeCount(); childIndex++){
+			writeNode(out, node.getChildNode(childIndex));
+		}
+	}
+
+	protected static void writeString(DataOutputStream out, String value) throws IOException{
+		if(value == null){
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(utf8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	protected static void writeStrings(DataOutputStream out, String[] values) throws IOException{
+		if(values == null){
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for(String value:values){
+			writeString(out, value);
+		}
+	}
+}
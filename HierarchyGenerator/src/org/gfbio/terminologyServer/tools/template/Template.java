@@ -0,0 +1,239 @@
+package org.gfbio.terminologyServer.tools.template;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A template from the settings, parsed once into literal segments, placeholder slots, column references (&lt;property-N&gt;)
+ * and conditional blocks (&lt;if-property-N&gt;...&lt;/if-property-N&gt;). Rendering writes the segments directly to a Writer.
+ */
+public class Template {
+	public static final int ID = 0;
+	public static final int NAME = 1;
+	public static final int RELATIONS = 2;
+	public static final int PROPERTIES = 3;
+	public static final int PARENT = 4;
+	public static final int CHILD = 5;
+	public static final int VALUE = 6;
+	public static final int PROPERTY = 7;
+	
+	protected static final String[] placeholderTags = {"<id>", "<name>", "<relations>", "<properties>", "<parent>", "<child>", "<value>", "<property>"};
+	protected static final String columnReferencePrefix = "<property-";
+	protected static final String conditionalPrefix = "<if-property-";
+	protected static final String conditionalEndPrefix = "</if-property-";
+	
+	public interface Context {
+		public void writePlaceholder(int placeholder, Writer out) throws IOException;
+		
+		//returns null if the column is not a property column or has no value in the current line
+		public String getColumnValue(int column);
+	}
+	
+	protected final String text;
+	protected final Segment[] segments;
+	protected final boolean blank;
+	
+	protected Template(String text, Segment[] segments) {
+		this.text = text;
+		this.segments = segments;
+		blank = text.equals(" ") || text.equals("	");
+	}
+	
+	/**
+	 * @param columnReferences whether &lt;property-N&gt; and &lt;if-property-N&gt; are evaluated
+	 * @param placeholders the placeholders that are replaced, all other tags are kept as they are
+	 */
+	public static Template compile(String text, boolean columnReferences, int... placeholders){
+		boolean[] enabledPlaceholders = new boolean[placeholderTags.length];
+		for(int placeholder:placeholders){
+			enabledPlaceholders[placeholder] = true;
+		}
+		Parser parser = new Parser(text, columnReferences, enabledPlaceholders);
+		List<Segment> segments = new ArrayList<Segment>();
+		parser.parse(0, -1, segments);
+		return new Template(text, segments.toArray(new Segment[segments.size()]));
+	}
+	
+	public void render(Writer out, Context context) throws IOException{
+		renderSegments(segments, out, context);
+	}
+	
+	protected static void renderSegments(Segment[] segments, Writer out, Context context) throws IOException{
+		for(Segment segment:segments){
+			segment.render(out, context);
+		}
+	}
+	
+	public String getText() {
+		return text;
+	}
+	
+	//a template consisting of a single space or tab
+	public boolean isBlank() {
+		return blank;
+	}
+	
+	protected static abstract class Segment {
+		protected abstract void render(Writer out, Context context) throws IOException;
+	}
+	
+	protected static class Literal extends Segment {
+		protected final String text;
+		
+		protected Literal(String text) {
+			this.text = text;
+		}
+		
+		@Override
+		protected void render(Writer out, Context context) throws IOException {
+			out.write(text);
+		}
+	}
+	
+	protected static class Placeholder extends Segment {
+		protected final int placeholder;
+		
+		protected Placeholder(int placeholder) {
+			this.placeholder = placeholder;
+		}
+		
+		@Override
+		protected void render(Writer out, Context context) throws IOException {
+			context.writePlaceholder(placeholder, out);
+		}
+	}
+	
+	protected static class ColumnReference extends Segment {
+		protected final int column;
+		
+		protected ColumnReference(int column) {
+			this.column = column;
+		}
+		
+		@Override
+		protected void render(Writer out, Context context) throws IOException {
+			String value = context.getColumnValue(column);
+			if(value != null){
+				out.write(value);
+			}
+		}
+	}
+	
+	protected static class Conditional extends Segment {
+		protected final int column;
+		protected final Segment[] body;
+		
+		protected Conditional(int column, Segment[] body) {
+			this.column = column;
+			this.body = body;
+		}
+		
+		@Override
+		protected void render(Writer out, Context context) throws IOException {
+			//the block is only written if the referenced property column has a value in the current line
+			String value = context.getColumnValue(column);
+			if(value != null && value.length() > 0){
+				renderSegments(body, out, context);
+			}
+		}
+	}
+	
+	protected static class Parser {
+		protected final String text;
+		protected final boolean columnReferences;
+		protected final boolean[] enabledPlaceholders;
+		
+		protected Parser(String text, boolean columnReferences, boolean[] enabledPlaceholders) {
+			this.text = text;
+			this.columnReferences = columnReferences;
+			this.enabledPlaceholders = enabledPlaceholders;
+		}
+		
+		//parses the segments starting at position until the end tag of the conditional block for the given column (or the end of the text for -1)
+		//returns the position after the end tag or -1 if the end tag was not found
+		protected int parse(int position, int conditionalColumn, List<Segment> segments){
+			StringBuilder literal = new StringBuilder();
+			while(position < text.length()){
+				char character = text.charAt(position);
+				if(character == '<'){
+					int placeholder = matchPlaceholder(position);
+					if(placeholder >= 0){
+						addLiteral(literal, segments);
+						segments.add(new Placeholder(placeholder));
+						position += placeholderTags[placeholder].length();
+						continue;
+					}
+					if(columnReferences){
+						int tagEnd = matchColumnTag(position, conditionalEndPrefix);
+						if(tagEnd > 0 && conditionalColumn >= 0 && parseColumn(position, conditionalEndPrefix, tagEnd) == conditionalColumn){
+							addLiteral(literal, segments);
+							return tagEnd;
+						}
+						tagEnd = matchColumnTag(position, columnReferencePrefix);
+						if(tagEnd > 0){
+							addLiteral(literal, segments);
+							segments.add(new ColumnReference(parseColumn(position, columnReferencePrefix, tagEnd)));
+							position = tagEnd;
+							continue;
+						}
+						tagEnd = matchColumnTag(position, conditionalPrefix);
+						if(tagEnd > 0){
+							int column = parseColumn(position, conditionalPrefix, tagEnd);
+							List<Segment> body = new ArrayList<Segment>();
+							int blockEnd = parse(tagEnd, column, body);
+							if(blockEnd > 0){
+								addLiteral(literal, segments);
+								segments.add(new Conditional(column, body.toArray(new Segment[body.size()])));
+								position = blockEnd;
+								continue;
+							}
+							//there is no end tag, the start tag is kept as text
+						}
+					}
+				}
+				literal.append(character);
+				position++;
+			}
+			addLiteral(literal, segments);
+			return conditionalColumn < 0 ? position : -1;
+		}
+		
+		protected int matchPlaceholder(int position){
+			for(int placeholder = 0; placeholder < placeholderTags.length; placeholder++){
+				if(enabledPlaceholders[placeholder] && text.startsWith(placeholderTags[placeholder], position)){
+					return placeholder;
+				}
+			}
+			return -1;
+		}
+		
+		//returns the position after a tag of the form prefix+digits+'>' or -1
+		protected int matchColumnTag(int position, String prefix){
+			if(!text.startsWith(prefix, position)){
+				return -1;
+			}
+			int digitsStart = position+prefix.length();
+			int digitsEnd = digitsStart;
+			while(digitsEnd < text.length() && text.charAt(digitsEnd) >= '0' && text.charAt(digitsEnd) <= '9' && digitsEnd-digitsStart < 9){
+				digitsEnd++;
+			}
+			if(digitsEnd == digitsStart || digitsEnd >= text.length() || text.charAt(digitsEnd) != '>'){
+				return -1;
+			}
+			return digitsEnd+1;
+		}
+		
+		protected int parseColumn(int position, String prefix, int tagEnd){
+			return Integer.parseInt(text.substring(position+prefix.length(), tagEnd-1));
+		}
+		
+		protected void addLiteral(StringBuilder literal, List<Segment> segments){
+			if(literal.length() > 0){
+				segments.add(new Literal(literal.toString()));
+				literal.setLength(0);
+			}
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package org.gfbio.terminologyServer.tools.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the bytes to the underlying stream on its own thread, e.g. to compress the output while it is rendered.
+ * The bytes are collected in buffers of bufferSize, full buffers are handed to the thread through a queue of a few buffers.
+ * close() waits until everything is written and closes the underlying stream, a failure of the thread is thrown by the next write or by close(),
+ * other exceptions than IOExceptions as their cause.
+ * A file handed over with transferFrom() is copied by the thread between the bytes written before and after it with FileChannel.transferTo().
+ */
+public class BackgroundOutputStream extends OutputStream {
+	protected static final int queuedBuffers = 4;
+	//marks the end of the stream in the queue
+	protected static final byte[] end = new byte[0];
+
+	protected final OutputStream out;
+	protected final BlockingQueue<Buffer> filledBuffers;
+	protected final BlockingQueue<Buffer> emptyBuffers;
+	protected final Thread thread;
+	protected Buffer buffer;
+	protected volatile IOException failure;
+	protected boolean closed;
+	//created by the thread for the first transferred file
+	protected WritableByteChannel channel;
+
+	protected static class Buffer {
+		protected final byte[] bytes;
+		protected int count;
+		//a file to transfer instead of the bytes
+		protected File file;
+
+		protected Buffer(byte[] bytes) {
+			this.bytes = bytes;
+		}
+	}
+
+	public BackgroundOutputStream(OutputStream out, int bufferSize, String threadName) {
+		this.out = out;
+		filledBuffers = new ArrayBlockingQueue<Buffer>(queuedBuffers+1);
+		emptyBuffers = new ArrayBlockingQueue<Buffer>(queuedBuffers+1);
+		for(int index = 0; index < queuedBuffers; index++){
+			emptyBuffers.add(new Buffer(new byte[bufferSize]));
+		}
+		buffer = new Buffer(new byte[bufferSize]);
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeBuffers();
+			}
+		}, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	protected void writeBuffers(){
+		try{
+			Buffer filledBuffer = filledBuffers.take();
+			while(filledBuffer.bytes != end){
+				//after a failure the buffers are only returned, so that the writing thread does not wait forever
+				if(failure == null){
+					try{
+						if(filledBuffer.file != null){
+							transfer(filledBuffer.file);
+						}else{
+							out.write(filledBuffer.bytes, 0, filledBuffer.count);
+						}
+					}catch(Throwable e){
+						//also a runtime exception of the underlying stream, e.g. of a compressor, must not end the thread
+						fail(e);
+					}
+				}
+				if(filledBuffer.file == null){
+					filledBuffer.count = 0;
+					emptyBuffers.put(filledBuffer);
+				}
+				filledBuffer = filledBuffers.take();
+			}
+		}catch(InterruptedException e){
+			failure = new InterruptedIOException("Interrupted while writing the output.");
+		}finally{
+			try{
+				out.close();
+			}catch(Throwable e){
+				if(failure == null){
+					fail(e);
+				}
+			}
+		}
+	}
+
+	//the failure is thrown as an IOException by the writing thread
+	protected void fail(Throwable e){
+		if(e instanceof IOException){
+			failure = (IOException)e;
+		}else{
+			failure = new IOException("Writing the output failed: "+e, e);
+		}
+	}
+
+	protected void transfer(File file) throws IOException{
+		if(channel == null){
+			//the channel is not closed, the stream is closed at the end
+			if(out instanceof FileOutputStream){
+				channel = ((FileOutputStream)out).getChannel();
+			}else{
+				channel = Channels.newChannel(out);
+			}
+		}
+		FileInputStream input = new FileInputStream(file);
+		try{
+			FileChannel source = input.getChannel();
+			long size = source.size();
+			long position = 0;
+			while(position < size){
+				position += source.transferTo(position, size-position, channel);
+			}
+		}finally{
+			input.close();
+		}
+	}
+
+	//hands the bytes written so far and the file to the thread, the file must not change until it is written
+	public void transferFrom(File file) throws IOException {
+		flush();
+		checkFailure();
+		Buffer fileBuffer = new Buffer(new byte[0]);
+		fileBuffer.file = file;
+		try{
+			filledBuffers.put(fileBuffer);
+		}catch(InterruptedException e){
+			throw new InterruptedIOException("Interrupted while writing the output.");
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if(buffer.count == buffer.bytes.length){
+			handOver();
+		}
+		buffer.bytes[buffer.count++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while(len > 0){
+			if(buffer.count == buffer.bytes.length){
+				handOver();
+			}
+			int length = Math.min(len, buffer.bytes.length-buffer.count);
+			System.arraycopy(b, off, buffer.bytes, buffer.count, length);
+			buffer.count += length;
+			off += length;
+			len -= length;
+		}
+	}
+
+	//hands the current buffer to the thread and takes an empty one
+	protected void handOver() throws IOException {
+		checkFailure();
+		try{
+			filledBuffers.put(buffer);
+			buffer = emptyBuffers.take();
+		}catch(InterruptedException e){
+			throw new InterruptedIOException("Interrupted while writing the output.");
+		}
+	}
+
+	protected void checkFailure() throws IOException {
+		if(failure != null){
+			throw failure;
+		}
+	}
+
+	//hands the bytes written so far to the thread, it does not wait until they are written
+	@Override
+	public void flush() throws IOException {
+		if(buffer.count > 0){
+			handOver();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		try{
+			flush();
+		}finally{
+			try{
+				filledBuffers.put(new Buffer(end));
+				thread.join();
+			}catch(InterruptedException e){
+				thread.interrupt();
+				throw new InterruptedIOException("Interrupted while writing the output.");
+			}
+		}
+		checkFailure();
+	}
+}
@@ -0,0 +1,121 @@
+package org.gfbio.terminologyServer.tools.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A Writer that encodes the characters into a direct ByteBuffer and writes it to a channel when the buffer is full.
+ * Nothing is written to the channel in between, flush() only has to be called at explicit checkpoints.
+ */
+public class ChannelWriter extends Writer {
+	protected final WritableByteChannel channel;
+	protected final CharsetEncoder encoder;
+	protected final CharBuffer charBuffer;
+	protected final ByteBuffer byteBuffer;
+	protected boolean closed;
+	
+	public ChannelWriter(WritableByteChannel channel, Charset charset, int bufferSize) {
+		this.channel = channel;
+		this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		//room for at least a surrogate pair, of which the first half may remain in the buffer after encoding
+		this.charBuffer = CharBuffer.allocate(Math.max(bufferSize, 2));
+		this.byteBuffer = ByteBuffer.allocateDirect((int)Math.ceil(charBuffer.capacity()*(double)encoder.maxBytesPerChar()));
+		closed = false;
+	}
+	
+	@Override
+	public void write(int character) throws IOException {
+		ensureOpen();
+		if(!charBuffer.hasRemaining()){
+			encode(false);
+		}
+		charBuffer.put((char)character);
+	}
+	
+	@Override
+	public void write(String text, int offset, int length) throws IOException {
+		ensureOpen();
+		while(length > 0){
+			if(!charBuffer.hasRemaining()){
+				encode(false);
+			}
+			int chunkLength = Math.min(length, charBuffer.remaining());
+			charBuffer.put(text, offset, offset+chunkLength);
+			offset += chunkLength;
+			length -= chunkLength;
+		}
+	}
+	
+	@Override
+	public void write(char[] characters, int offset, int length) throws IOException {
+		ensureOpen();
+		while(length > 0){
+			if(!charBuffer.hasRemaining()){
+				encode(false);
+			}
+			int chunkLength = Math.min(length, charBuffer.remaining());
+			charBuffer.put(characters, offset, chunkLength);
+			offset += chunkLength;
+			length -= chunkLength;
+		}
+	}
+	
+	//encodes the buffered characters and writes them to the channel, an incomplete surrogate pair stays in the buffer unless it is the end of the input
+	protected void encode(boolean endOfInput) throws IOException{
+		charBuffer.flip();
+		CoderResult result = encoder.encode(charBuffer, byteBuffer, endOfInput);
+		while(result.isOverflow()){
+			writeBytes();
+			result = encoder.encode(charBuffer, byteBuffer, endOfInput);
+		}
+		if(endOfInput){
+			while(encoder.flush(byteBuffer).isOverflow()){
+				writeBytes();
+			}
+		}
+		writeBytes();
+		charBuffer.compact();
+	}
+	
+	protected void writeBytes() throws IOException{
+		byteBuffer.flip();
+		while(byteBuffer.hasRemaining()){
+			channel.write(byteBuffer);
+		}
+		byteBuffer.clear();
+	}
+	
+	//like BufferedWriter, the writer can not be used after close()
+	protected void ensureOpen() throws IOException{
+		if(closed){
+			throw new IOException("Stream closed");
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		encode(false);
+	}
+	
+	//the channel is also closed if the last characters can not be written
+	@Override
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		try{
+			encode(true);
+		}finally{
+			channel.close();
+		}
+	}
+}
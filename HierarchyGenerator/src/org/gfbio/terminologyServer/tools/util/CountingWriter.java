@@ -0,0 +1,72 @@
+package org.gfbio.terminologyServer.tools.util;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Counts the UTF-8 bytes of the characters written to the writer, so the count is known without flushing the writer.
+ * Like the UTF-8 encoders of the output, an unpaired surrogate counts as one byte for its replacement '?'.
+ */
+public class CountingWriter extends FilterWriter {
+	protected long count;
+	//the first half of a surrogate pair is counted with the second half
+	protected boolean highSurrogate;
+
+	public CountingWriter(Writer out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		out.write(c);
+		count((char)c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		out.write(cbuf, off, len);
+		for(int index = off; index < off+len; index++){
+			count(cbuf[index]);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		out.write(str, off, len);
+		for(int index = off; index < off+len; index++){
+			count(str.charAt(index));
+		}
+	}
+
+	protected void count(char character){
+		if(highSurrogate){
+			highSurrogate = false;
+			if(Character.isLowSurrogate(character)){
+				count += 4;
+				return;
+			}
+			count++;
+		}
+		if(character < 0x80){
+			count++;
+		}else if(character < 0x800){
+			count += 2;
+		}else if(Character.isHighSurrogate(character)){
+			highSurrogate = true;
+		}else if(Character.isLowSurrogate(character)){
+			count++;
+		}else{
+			count += 3;
+		}
+	}
+
+	//bytes written to the underlying stream directly, e.g. a transferred file
+	public void addBytes(long bytes) {
+		count += bytes;
+	}
+
+	public long getCount() {
+		return count;
+	}
+}
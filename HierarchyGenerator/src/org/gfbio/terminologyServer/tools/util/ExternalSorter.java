@@ -0,0 +1,262 @@
+package org.gfbio.terminologyServer.tools.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts more records than fit into the memory: the records are collected up to memoryBudget (estimated by the Codec),
+ * sorted and written as a run to a temporary file. sorted() merges the runs, at most maxMergedRuns at once,
+ * records that are equal in the order keep the order in which they were added. If all records fit into the memory, no file is written.
+ * Strings are written as their number of UTF-8 bytes (-1 for null) and the bytes, so they are not limited to 64 KB like with writeUTF.
+ */
+public class ExternalSorter<T> {
+	protected static final int maxMergedRuns = 64;
+	protected static final int streamBufferSize = 65536;
+	protected static final Charset utf8 = Charset.forName("UTF-8");
+
+	//writes and reads one record and estimates its heap bytes
+	public interface Codec<T> {
+		void write(DataOutputStream out, T record) throws IOException;
+
+		T read(DataInputStream in) throws IOException;
+
+		long estimateBytes(T record);
+	}
+
+	protected final Comparator<T> order;
+	protected final Codec<T> codec;
+	protected final long memoryBudget;
+	protected final File directory;
+	protected final String name;
+	protected List<T> records = new ArrayList<T>();
+	protected long recordBytes;
+	protected final List<File> runs = new ArrayList<File>();
+	protected long count;
+
+	//directory is null for the default temporary directory, name is the prefix of the run files
+	public ExternalSorter(Comparator<T> order, Codec<T> codec, long memoryBudget, File directory, String name) {
+		this.order = order;
+		this.codec = codec;
+		this.memoryBudget = memoryBudget;
+		this.directory = directory;
+		this.name = name;
+	}
+
+	public void add(T record) throws IOException{
+		records.add(record);
+		recordBytes += codec.estimateBytes(record)+8;
+		count++;
+		if(recordBytes >= memoryBudget){
+			spill();
+		}
+	}
+
+	public long size(){
+		return count;
+	}
+
+	//the number of run files written so far
+	public int getRunCount(){
+		return runs.size();
+	}
+
+	protected void spill() throws IOException{
+		Collections.sort(records, order);
+		File run = File.createTempFile(name, ".run", directory);
+		runs.add(run);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), streamBufferSize));
+		try{
+			for(T record:records){
+				codec.write(out, record);
+			}
+		}finally{
+			out.close();
+		}
+		records.clear();
+		recordBytes = 0;
+	}
+
+	//no records can be added afterwards, the reader deletes the run files when it is closed
+	public Reader sorted() throws IOException{
+		try{
+			if(runs.isEmpty()){
+				Collections.sort(records, order);
+				List<T> sortedRecords = records;
+				records = null;
+				return new Reader(sortedRecords, new ArrayList<File>());
+			}
+			if(!records.isEmpty()){
+				spill();
+			}
+			records = null;
+			//merge the runs in groups until they can be merged at once
+			while(runs.size() > maxMergedRuns){
+				List<File> mergedRuns = new ArrayList<File>(runs.subList(0, maxMergedRuns));
+				runs.subList(0, maxMergedRuns).clear();
+				//the merged run takes the place of the first runs, so that equal records keep their order
+				File run = File.createTempFile(name, ".run", directory);
+				runs.add(0, run);
+				Reader reader = new Reader(null, mergedRuns);
+				try{
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), streamBufferSize));
+					try{
+						T record = reader.next();
+						while(record != null){
+							codec.write(out, record);
+							record = reader.next();
+						}
+					}finally{
+						out.close();
+					}
+				}finally{
+					reader.close();
+				}
+			}
+			Reader reader = new Reader(null, new ArrayList<File>(runs));
+			runs.clear();
+			return reader;
+		}catch(IOException e){
+			delete();
+			throw e;
+		}
+	}
+
+	//deletes the run files, e.g. if the sorting failed
+	public void delete(){
+		for(File run:runs){
+			run.delete();
+		}
+		runs.clear();
+		records = null;
+	}
+
+	public static void writeString(DataOutputStream out, String value) throws IOException{
+		if(value == null){
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(utf8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInputStream in) throws IOException{
+		int length = in.readInt();
+		if(length < 0){
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, utf8);
+	}
+
+	//the heap bytes of a string, about like MemoryReport
+	public static long estimateBytes(String value){
+		return value == null ? 0 : 56+2*value.length();
+	}
+
+	//returns the records in order, from the memory or merged from the runs
+	public class Reader {
+		protected final List<T> sortedRecords;
+		protected int recordIndex;
+		protected final List<File> runFiles;
+		protected final List<DataInputStream> inputs;
+		protected final PriorityQueue<RunHead> heads;
+
+		//either the records sorted in memory or the run files
+		protected Reader(List<T> sortedRecords, List<File> runFiles) throws IOException {
+			this.sortedRecords = sortedRecords;
+			this.runFiles = runFiles;
+			inputs = new ArrayList<DataInputStream>(runFiles.size());
+			heads = new PriorityQueue<RunHead>(Math.max(1, runFiles.size()));
+			try{
+				for(File run:runFiles){
+					DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), streamBufferSize));
+					inputs.add(in);
+					RunHead head = new RunHead(in, inputs.size()-1);
+					if(head.advance()){
+						heads.add(head);
+					}
+				}
+			}catch(IOException e){
+				close();
+				throw e;
+			}
+		}
+
+		//the next record, null after the last one
+		public T next() throws IOException{
+			if(sortedRecords != null){
+				if(recordIndex == sortedRecords.size()){
+					return null;
+				}
+				T record = sortedRecords.get(recordIndex);
+				sortedRecords.set(recordIndex++, null);
+				return record;
+			}
+			RunHead head = heads.poll();
+			if(head == null){
+				return null;
+			}
+			T record = head.record;
+			if(head.advance()){
+				heads.add(head);
+			}
+			return record;
+		}
+
+		public void close(){
+			for(DataInputStream in:inputs){
+				try{
+					in.close();
+				}catch(IOException e){
+					//only read
+				}
+			}
+			for(File run:runFiles){
+				run.delete();
+			}
+		}
+	}
+
+	//the current record of a run, runs that were written earlier come first for equal records
+	protected class RunHead implements Comparable<RunHead> {
+		protected final DataInputStream in;
+		protected final int runIndex;
+		protected T record;
+
+		protected RunHead(DataInputStream in, int runIndex) {
+			this.in = in;
+			this.runIndex = runIndex;
+		}
+
+		protected boolean advance() throws IOException{
+			try{
+				record = codec.read(in);
+				return true;
+			}catch(EOFException e){
+				record = null;
+				return false;
+			}
+		}
+
+		@Override
+		public int compareTo(RunHead head) {
+			int comparison = order.compare(record, head.record);
+			return comparison != 0 ? comparison : Integer.compare(runIndex, head.runIndex);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package org.gfbio.terminologyServer.tools.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads the bytes from start to end of a file channel with positional reads,
+ * so that several threads can read different ranges of the same channel at the same time.
+ * Closing it does not close the file channel.
+ */
+public class FileRangeChannel implements ReadableByteChannel {
+	protected final FileChannel channel;
+	protected long position;
+	protected final long end;
+	protected boolean open = true;
+
+	public FileRangeChannel(FileChannel channel, long start, long end) {
+		this.channel = channel;
+		this.position = start;
+		this.end = end;
+	}
+
+	@Override
+	public int read(ByteBuffer destination) throws IOException {
+		if(position >= end){
+			return -1;
+		}
+		int limit = destination.limit();
+		if(destination.remaining() > end-position){
+			destination.limit(destination.position()+(int)(end-position));
+		}
+		try{
+			int read = channel.read(destination, position);
+			if(read < 0){
+				//the file is shorter than the range
+				return -1;
+			}
+			position += read;
+			return read;
+		}finally{
+			destination.limit(limit);
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+}
@@ -0,0 +1,92 @@
+package org.gfbio.terminologyServer.tools.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the output of several threads line by line to the underlying stream, every line with the prefix of the thread that wrote it.
+ * The bytes of a thread are collected until the end of the line, so the lines of different threads are not mixed.
+ * The prefix is inherited by the threads that a thread starts afterwards, e.g. by the render threads of a job.
+ * A line that is not ended is written by close().
+ */
+public class LinePrefixOutputStream extends OutputStream {
+	protected final OutputStream out;
+	protected final Charset charset;
+	protected final InheritableThreadLocal<byte[]> prefix = new InheritableThreadLocal<byte[]>();
+	protected final ThreadLocal<ByteArrayOutputStream> line = new ThreadLocal<ByteArrayOutputStream>(){
+		@Override
+		protected ByteArrayOutputStream initialValue() {
+			return new ByteArrayOutputStream(128);
+		}
+	};
+
+	//the charset of the prefixes, the charset of the PrintStream that writes to this stream
+	public LinePrefixOutputStream(OutputStream out, Charset charset) {
+		this.out = out;
+		this.charset = charset;
+	}
+
+	//the prefix of the lines of the current thread, null for none
+	public void setPrefix(String linePrefix){
+		if(linePrefix == null){
+			prefix.remove();
+		}else{
+			prefix.set(linePrefix.getBytes(charset));
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ByteArrayOutputStream currentLine = line.get();
+		currentLine.write(b);
+		if(b == '\n'){
+			writeLine(currentLine);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ByteArrayOutputStream currentLine = line.get();
+		int lineStart = off;
+		for(int index = off; index < off+len; index++){
+			if(b[index] == '\n'){
+				currentLine.write(b, lineStart, index+1-lineStart);
+				writeLine(currentLine);
+				lineStart = index+1;
+			}
+		}
+		currentLine.write(b, lineStart, off+len-lineStart);
+	}
+
+	protected void writeLine(ByteArrayOutputStream currentLine) throws IOException {
+		synchronized(out){
+			byte[] linePrefix = prefix.get();
+			if(linePrefix != null){
+				out.write(linePrefix);
+			}
+			currentLine.writeTo(out);
+			out.flush();
+		}
+		currentLine.reset();
+	}
+
+	//the lines that are not ended stay with their thread
+	@Override
+	public void flush() throws IOException {
+		synchronized(out){
+			out.flush();
+		}
+	}
+
+	//writes the line of the current thread that is not ended, the underlying stream is not closed
+	@Override
+	public void close() throws IOException {
+		ByteArrayOutputStream currentLine = line.get();
+		if(currentLine.size() > 0){
+			writeLine(currentLine);
+		}
+		line.remove();
+	}
+}
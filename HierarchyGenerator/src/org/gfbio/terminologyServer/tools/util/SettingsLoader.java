@@ -3,10 +3,8 @@ package org.gfbio.terminologyServer.tools.util;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -25,19 +23,29 @@ public class SettingsLoader {
 		}
 		//load default settings file
 		if(settingsFile == null || !settingsFile.exists()){
-			settingsFile = new File(defaultSettingsFileLocation);if(!settingsFile.exists()){
+			settingsFile = new File(defaultSettingsFileLocation);
+			if(!settingsFile.exists()){
 				System.out.println("Default settings file '"+defaultSettingsFileLocation+"' does not exist. Stopping program now ...");
 				System.exit(1);
 			}
 		}
 		
-		//load settings
+		try {
+			return loadSettings(settingsFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return new TreeMap<String,String>();
+	}
+	
+	//reads the settings from the file, the lines that can not be read are reported and skipped
+	public static Map<String, String> loadSettings(File settingsFile) throws IOException {
 		String nextLine;
 		int lineCount = 0;
 		String previousSettingsKey = null;
 		Map<String,String> settingsMap = new TreeMap<String,String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(settingsFile), "UTF-8"));
 		try {
-			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(settingsFile), "UTF-8"));
 			while ((nextLine = reader.readLine()) != null) {
 				lineCount++;
 				//skip commented lines and empty lines
@@ -67,16 +75,8 @@ public class SettingsLoader {
 					previousSettingsKey = settingsKey;
 				}
 			}
+		} finally {
 			reader.close();
-		} catch (UnsupportedEncodingException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
 		}
 		return settingsMap;
 	}